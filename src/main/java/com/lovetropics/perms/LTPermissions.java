@@ -8,10 +8,12 @@ import com.lovetropics.lib.permission.role.RoleReader;
 import com.lovetropics.perms.command.FlyCommand;
 import com.lovetropics.perms.command.RoleCommand;
 import com.lovetropics.perms.config.RolesConfig;
+import com.lovetropics.perms.config.StorageConfig;
 import com.lovetropics.perms.override.NameDecorationOverride;
 import com.lovetropics.perms.override.command.CommandOverride;
 import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
 import com.lovetropics.perms.protection.command.ProtectCommand;
+import com.lovetropics.perms.role.RoleSelectorPredicate;
 import com.lovetropics.perms.store.PlayerRoleManager;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
@@ -28,7 +30,9 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.neoforged.bus.api.IEventBus;
+import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
+import net.neoforged.fml.config.ModConfig;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
@@ -83,7 +87,9 @@ public class LTPermissions {
         }
     };
 
-    public LTPermissions(IEventBus modBus) {
+    public LTPermissions(IEventBus modBus, ModContainer container) {
+        container.registerConfig(ModConfig.Type.SERVER, StorageConfig.SPEC);
+
         modBus.addListener(this::setup);
         NeoForge.EVENT_BUS.addListener(this::registerCommands);
         NeoForge.EVENT_BUS.addListener(this::onServerChat);
@@ -94,15 +100,7 @@ public class LTPermissions {
             boolean inverted = parser.shouldInvertValue();
             parser.setSuggestions((builder, consumer) -> SharedSuggestionProvider.suggest(RolesConfig.get().stream().map(Role::id), builder));
             String name = parser.getReader().readUnquotedString();
-            parser.addPredicate(entity -> {
-                final RoleReader roles = PermissionsApi.lookup().byEntity(entity);
-                for (final Role role : roles) {
-                    if (name.equals(role.id())) {
-                        return !inverted;
-                    }
-                }
-                return inverted;
-            });
+            parser.addPredicate(new RoleSelectorPredicate(name, inverted));
         }, parser -> true, Component.literal("Player Role"));
     }
 
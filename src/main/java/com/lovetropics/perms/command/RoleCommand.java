@@ -2,10 +2,12 @@ package com.lovetropics.perms.command;
 
 import com.lovetropics.lib.permission.PermissionsApi;
 import com.lovetropics.lib.permission.role.Role;
+import com.lovetropics.perms.LTPermissions;
 import com.lovetropics.perms.config.RolesConfig;
 import com.lovetropics.perms.override.command.CommandOverride;
+import com.lovetropics.perms.store.OfflineRoleCache;
 import com.lovetropics.perms.store.PlayerRoleManager;
-import com.lovetropics.perms.store.PlayerRoleSet;
+import com.lovetropics.perms.store.RoleOperation;
 import com.mojang.authlib.GameProfile;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
@@ -15,6 +17,7 @@ import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.ChatFormatting;
+import net.minecraft.Util;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.SharedSuggestionProvider;
@@ -24,12 +27,20 @@ import net.minecraft.network.chat.ComponentUtils;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.Style;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.players.GameProfileCache;
+import net.minecraft.world.level.storage.LevelResource;
 
 import javax.annotation.Nullable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.function.BiPredicate;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static net.minecraft.commands.Commands.argument;
@@ -42,6 +53,12 @@ public final class RoleCommand {
 
     public static final SimpleCommandExceptionType TOO_MANY_SELECTED = new SimpleCommandExceptionType(Component.literal("Too many players selected!"));
 
+    public static final DynamicCommandExceptionType IMPORT_FILE_NOT_FOUND = new DynamicCommandExceptionType(arg -> Component.translatable("No file to import from was found at '%s' in the world directory", arg));
+
+    private static final String ROLES_EXPORT_FILE = "player_roles.ndjson";
+
+    private static final int MAX_LISTED_MEMBERS = 50;
+
     // @formatter:off
     public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
         dispatcher.register(literal("role")
@@ -53,7 +70,7 @@ public final class RoleCommand {
                         CommandSourceStack source = ctx.getSource();
                         Collection<GameProfile> targets = GameProfileArgument.getGameProfiles(ctx, "targets");
                         String roleName = StringArgumentType.getString(ctx, "role");
-                        return updateRoles(source, targets, roleName, PlayerRoleSet::add, "'%s' assigned to %s players");
+                        return updateRoles(source, targets, roleName, RoleOperation.ADD, "'%s' assigned to %s players");
                     })
                 )))
                 .then(literal("remove")
@@ -63,7 +80,7 @@ public final class RoleCommand {
                         CommandSourceStack source = ctx.getSource();
                         Collection<GameProfile> targets = GameProfileArgument.getGameProfiles(ctx, "targets");
                         String roleName = StringArgumentType.getString(ctx, "role");
-                        return updateRoles(source, targets, roleName, PlayerRoleSet::remove, "'%s' removed from %s players");
+                        return updateRoles(source, targets, roleName, RoleOperation.REMOVE, "'%s' removed from %s players");
                     })
                 )))
                 .then(literal("list")
@@ -76,29 +93,53 @@ public final class RoleCommand {
                         return listRoles(source, gameProfiles.iterator().next());
                     }))
                 )
+                .then(literal("members")
+                    .then(argument("role", StringArgumentType.word()).suggests(roleSuggestions())
+                    .executes(ctx -> {
+                        CommandSourceStack source = ctx.getSource();
+                        String roleName = StringArgumentType.getString(ctx, "role");
+                        return listMembers(source, roleName);
+                    })
+                ))
                 .then(literal("reload").executes(ctx -> reloadRoles(ctx.getSource())))
+                .then(literal("database")
+                    .requires(s -> s.hasPermission(Commands.LEVEL_OWNERS))
+                    .then(literal("export").executes(ctx -> exportRoles(ctx.getSource())))
+                    .then(literal("import").executes(ctx -> importRoles(ctx.getSource())))
+                    .then(literal("cache").executes(ctx -> showCacheStats(ctx.getSource())))
+                )
         );
     }
     // @formatter:on
 
-    private static int updateRoles(CommandSourceStack source, Collection<GameProfile> players, String roleName, BiPredicate<PlayerRoleSet, Role> apply, String success) throws CommandSyntaxException {
+    private static int updateRoles(CommandSourceStack source, Collection<GameProfile> players, String roleName, RoleOperation operation, String success) throws CommandSyntaxException {
         Role role = getRole(roleName);
         requireHasPower(source, role);
 
-        PlayerRoleManager roleManager = PlayerRoleManager.get();
+        MinecraftServer server = source.getServer();
+        List<UUID> uuids = players.stream().map(GameProfile::getId).distinct().collect(Collectors.toList());
 
-        int count = 0;
-        for (GameProfile player : players) {
-            boolean applied = roleManager.updateRoles(player.getId(), roles -> apply.test(roles, role));
-            if (applied) {
-                count++;
+        long startTime = Util.getNanos();
+        CompletableFuture<Integer> result = PlayerRoleManager.get().updateRoles(server, uuids, role, operation);
+        result.whenCompleteAsync((count, throwable) -> {
+            if (throwable != null) {
+                LTPermissions.LOGGER.error("Failed to update roles of {} players", uuids.size(), throwable);
+                source.sendFailure(Component.literal("Failed to update player roles, see the server log for details"));
+                return;
             }
-        }
 
-        int finalCount = count;
-        source.sendSuccess(() -> Component.translatable(success, roleName, finalCount), true);
+            double seconds = Math.max(Util.getNanos() - startTime, 1) / 1.0E9;
+            String time = String.format(Locale.ROOT, "%.1f", seconds * 1000.0);
+            String throughput = String.format(Locale.ROOT, "%.0f", uuids.size() / seconds);
+            source.sendSuccess(() -> Component.translatable(success, roleName, count)
+                    .append(Component.translatable(" (%s players in %sms, %s per second)", uuids.size(), time, throughput).withStyle(ChatFormatting.GRAY)), true);
+        }, server);
 
-        return Command.SINGLE_SUCCESS;
+        // offline players are only updated once this command has returned, so count every one of them as affected
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            return result.join();
+        }
+        return uuids.size();
     }
 
     private static int listRoles(CommandSourceStack source, GameProfile player) {
@@ -114,6 +155,31 @@ public final class RoleCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int listMembers(CommandSourceStack source, String roleName) throws CommandSyntaxException {
+        Role role = getRole(roleName);
+        Set<UUID> members = PlayerRoleManager.get().getPlayersWithRole(role);
+
+        GameProfileCache profileCache = source.getServer().getProfileCache();
+        List<String> names = members.stream()
+                .limit(MAX_LISTED_MEMBERS)
+                .map(uuid -> {
+                    Optional<GameProfile> profile = profileCache != null ? profileCache.get(uuid) : Optional.empty();
+                    return profile.map(GameProfile::getName).orElse(uuid.toString());
+                })
+                .sorted()
+                .collect(Collectors.toList());
+
+        source.sendSuccess(() -> {
+            MutableComponent namesComponent = ComponentUtils.formatList(names, name -> Component.literal(name).setStyle(Style.EMPTY.withColor(ChatFormatting.GRAY))).copy();
+            if (members.size() > names.size()) {
+                namesComponent.append(Component.translatable(" and %s more", members.size() - names.size()));
+            }
+            return Component.translatable("Found %s players with role '%s': %s", members.size(), roleName, namesComponent);
+        }, false);
+
+        return members.size();
+    }
+
     private static int reloadRoles(CommandSourceStack source) {
         MinecraftServer server = source.getServer();
         List<String> errors = RolesConfig.reload(server.getResourceManager());
@@ -131,6 +197,54 @@ public final class RoleCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int exportRoles(CommandSourceStack source) {
+        MinecraftServer server = source.getServer();
+        Path path = server.getWorldPath(LevelResource.ROOT).resolve(ROLES_EXPORT_FILE);
+
+        long startTime = Util.getMillis();
+        PlayerRoleManager.get().exportRoles(server, path).whenCompleteAsync((count, throwable) -> {
+            if (throwable != null) {
+                LTPermissions.LOGGER.error("Failed to export player roles to {}", path, throwable);
+                source.sendFailure(Component.literal("Failed to export player roles, see the server log for details"));
+            } else {
+                long time = Util.getMillis() - startTime;
+                source.sendSuccess(() -> Component.translatable("Exported roles for %s players to %s in %sms", count, ROLES_EXPORT_FILE, time), true);
+            }
+        }, server);
+
+        source.sendSuccess(() -> Component.literal("Exporting player roles..."), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int importRoles(CommandSourceStack source) throws CommandSyntaxException {
+        MinecraftServer server = source.getServer();
+        Path path = server.getWorldPath(LevelResource.ROOT).resolve(ROLES_EXPORT_FILE);
+        if (!Files.isRegularFile(path)) {
+            throw IMPORT_FILE_NOT_FOUND.create(ROLES_EXPORT_FILE);
+        }
+
+        long startTime = Util.getMillis();
+        PlayerRoleManager.get().importRoles(server, path).whenCompleteAsync((count, throwable) -> {
+            if (throwable != null) {
+                LTPermissions.LOGGER.error("Failed to import player roles from {}", path, throwable);
+                source.sendFailure(Component.literal("Failed to import player roles, see the server log for details"));
+            } else {
+                long time = Util.getMillis() - startTime;
+                source.sendSuccess(() -> Component.translatable("Imported roles for %s players from %s in %sms", count, ROLES_EXPORT_FILE, time), true);
+            }
+        }, server);
+
+        source.sendSuccess(() -> Component.literal("Importing player roles..."), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showCacheStats(CommandSourceStack source) {
+        OfflineRoleCache.Stats stats = PlayerRoleManager.get().offlineCacheStats();
+        String hitRate = String.format(Locale.ROOT, "%.1f%%", stats.hitRate() * 100.0);
+        source.sendSuccess(() -> Component.translatable("Offline role cache holds %s players, with %s hits and %s misses (%s hit rate)", stats.size(), stats.hits(), stats.misses(), hitRate), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static void requireHasPower(CommandSourceStack source, Role role) throws CommandSyntaxException {
         if (hasAdminPower(source)) {
             return;
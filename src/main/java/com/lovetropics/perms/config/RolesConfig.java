@@ -8,6 +8,7 @@ import com.lovetropics.lib.permission.PermissionsApi;
 import com.lovetropics.lib.permission.role.Role;
 import com.lovetropics.lib.permission.role.RoleProvider;
 import com.lovetropics.perms.LTPermissions;
+import com.lovetropics.perms.override.RoleOverrideCache;
 import com.lovetropics.perms.role.SimpleRole;
 import com.lovetropics.perms.store.PlayerRoleManager;
 import com.mojang.datafixers.util.Pair;
@@ -44,6 +45,13 @@ public final class RolesConfig implements RoleProvider {
     private final Map<String, Role> roles;
     private final Role everyone;
 
+    // every role by its index, with the everyone role at 0
+    private final Role[] rolesByIndex;
+    // every role except everyone, from highest to lowest priority
+    private final Role[] rolesByPriority;
+
+    private final RoleOverrideCache overrideCache = new RoleOverrideCache();
+
     private RolesConfig(List<Role> roles, Role everyone) {
         ImmutableMap.Builder<String, Role> roleMap = ImmutableMap.builder();
         for (Role role : roles) {
@@ -52,6 +60,31 @@ public final class RolesConfig implements RoleProvider {
         this.roles = roleMap.build();
 
         this.everyone = everyone;
+
+        this.rolesByIndex = new Role[roles.size() + 1];
+        this.rolesByIndex[0] = everyone;
+        for (Role role : roles) {
+            int index = roleIndex(role);
+            if (index <= 0 || index >= this.rolesByIndex.length || this.rolesByIndex[index] != null) {
+                throw new IllegalArgumentException("Role " + role + " does not have a unique index");
+            }
+            this.rolesByIndex[index] = role;
+        }
+
+        this.rolesByPriority = roles.stream().sorted().toArray(Role[]::new);
+    }
+
+    /**
+     * Creates a config from roles built outside of {@code roles.json}, such as in tests.
+     *
+     * @param roles every role except everyone, which must be {@link SimpleRole}s with unique indices from 1
+     */
+    public static RolesConfig of(List<Role> roles, Role everyone) {
+        return new RolesConfig(roles, everyone);
+    }
+
+    private static int roleIndex(Role role) {
+        return role instanceof SimpleRole simpleRole ? simpleRole.index() : -1;
     }
 
     public static RolesConfig get() {
@@ -149,6 +182,62 @@ public final class RolesConfig implements RoleProvider {
         return this.everyone;
     }
 
+    /**
+     * @return the override maps shared by players with the same roles in this config
+     */
+    public RoleOverrideCache overrideCache() {
+        return this.overrideCache;
+    }
+
+    /**
+     * @return the index of the given role if it belongs to this config, or -1 otherwise. The everyone role has index 0
+     */
+    public int indexOf(Role role) {
+        int index = roleIndex(role);
+        if (index >= 0 && index < this.rolesByIndex.length && this.rolesByIndex[index].equals(role)) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * @return for each role index in the given older config, the index of the role with the same id in this config, or
+     * -1 if it no longer exists
+     */
+    public int[] remapIndicesFrom(RolesConfig previous) {
+        int[] indices = new int[previous.rolesByIndex.length];
+        for (int index = 1; index < indices.length; index++) {
+            Role role = this.roles.get(previous.rolesByIndex[index].id());
+            indices[index] = role != null ? this.indexOf(role) : -1;
+        }
+        return indices;
+    }
+
+    public Role byIndex(int index) {
+        return this.rolesByIndex[index];
+    }
+
+    /**
+     * @return one more than the highest role index
+     */
+    public int indexCount() {
+        return this.rolesByIndex.length;
+    }
+
+    /**
+     * @param rank position from the highest priority role, which must be less than {@link #size()}
+     */
+    public Role byPriority(int rank) {
+        return this.rolesByPriority[rank];
+    }
+
+    /**
+     * @return the number of roles, not counting everyone
+     */
+    public int size() {
+        return this.rolesByPriority.length;
+    }
+
     @Nonnull
     @Override
     public Iterator<Role> iterator() {
@@ -0,0 +1,58 @@
+package com.lovetropics.perms.config;
+
+import com.lovetropics.perms.LTPermissions;
+import com.lovetropics.perms.store.db.DatabaseOptions;
+import net.minecraft.Util;
+import net.neoforged.neoforge.common.ModConfigSpec;
+
+public final class StorageConfig {
+    public static final ModConfigSpec SPEC;
+
+    private static final ModConfigSpec.BooleanValue MEMORY_MAPPED;
+    private static final ModConfigSpec.EnumValue<DatabaseOptions.SyncMode> SYNC_MODE;
+    private static final ModConfigSpec.IntValue SYNC_INTERVAL_MS;
+    private static final ModConfigSpec.IntValue SHARDS;
+
+    static {
+        ModConfigSpec.Builder builder = new ModConfigSpec.Builder();
+
+        builder.push("player_roles");
+        MEMORY_MAPPED = builder
+                .comment("Read the player role database through a memory mapping rather than with file reads.",
+                        "Reads no longer need to take the database lock. This is ignored on Windows, where a mapped file cannot be compacted.")
+                .define("memory_mapped", false);
+        SYNC_MODE = builder
+                .comment("When writes to the player role database are synced to disk.",
+                        "EVERY_WRITE never loses a write to a crash, but makes every write wait on the disk.",
+                        "INTERVAL syncs all recent writes together every sync_interval_ms, and ON_CLOSE only syncs on shutdown.",
+                        "The database is never left corrupt by a crash, whichever mode is picked.")
+                .defineEnum("sync", DatabaseOptions.SyncMode.INTERVAL);
+        SYNC_INTERVAL_MS = builder
+                .comment("How often writes are synced to disk with the INTERVAL sync mode, in milliseconds.")
+                .defineInRange("sync_interval_ms", 1000, 1, 60 * 1000);
+        SHARDS = builder
+                .comment("How many files to split the player role database across. Players in different files can be read and written in parallel.",
+                        "Changing this moves the existing database over to the new number of files on the next start.")
+                .defineInRange("shards", 1, 1, 256);
+        builder.pop();
+
+        SPEC = builder.build();
+    }
+
+    private StorageConfig() {
+    }
+
+    public static DatabaseOptions databaseOptions() {
+        boolean memoryMapped = MEMORY_MAPPED.get();
+        if (memoryMapped && Util.getPlatform() == Util.OS.WINDOWS) {
+            // compaction replaces the database file, which Windows refuses while it is mapped
+            LTPermissions.LOGGER.warn("Ignoring memory_mapped for the player role database, as it is not supported on Windows");
+            memoryMapped = false;
+        }
+        return new DatabaseOptions(memoryMapped, SYNC_MODE.get(), SYNC_INTERVAL_MS.get());
+    }
+
+    public static int shardCount() {
+        return SHARDS.get();
+    }
+}
@@ -0,0 +1,17 @@
+package com.lovetropics.perms.mixin;
+
+import com.lovetropics.perms.store.PlayerRoleManager;
+import com.mojang.authlib.GameProfile;
+import net.minecraft.server.network.ServerLoginPacketListenerImpl;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerLoginPacketListenerImpl.class)
+public class ServerLoginPacketListenerImplMixin {
+    @Inject(method = "startClientVerification", at = @At("HEAD"))
+    private void startClientVerification(final GameProfile profile, final CallbackInfo ci) {
+        PlayerRoleManager.onLoginVerified(profile);
+    }
+}
@@ -0,0 +1,67 @@
+package com.lovetropics.perms.override;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenCustomHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Canonical override maps for each combination of roles that has been seen, so that players holding the same roles
+ * share one immutable map instead of each combining their own. A cache belongs to a single roles config, and is
+ * dropped along with it when roles are reloaded. The least recently used combinations are evicted past a fixed size.
+ * <p>
+ * Combinations are keyed directly by the contents of the role bitset, and spread over independently locked stripes so
+ * that sets being rebuilt in parallel rarely wait on each other.
+ */
+public final class RoleOverrideCache {
+    private static final int STRIPE_COUNT = 16;
+    private static final int MAX_SIZE_PER_STRIPE = 1024 / STRIPE_COUNT;
+
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    public RoleOverrideCache() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeFor(long[] roles) {
+        return this.stripes[HashCommon.mix(LongArrays.HASH_STRATEGY.hashCode(roles)) & (STRIPE_COUNT - 1)];
+    }
+
+    /**
+     * @param roles the set role indices, as a bitset
+     */
+    @Nullable
+    public RoleOverrideMap get(long[] roles) {
+        Stripe stripe = this.stripeFor(roles);
+        synchronized (stripe) {
+            return stripe.maps.getAndMoveToFirst(roles);
+        }
+    }
+
+    /**
+     * @return the map already cached for the given roles, or the given map after caching it
+     */
+    public RoleOverrideMap intern(long[] roles, RoleOverrideMap overrides) {
+        Stripe stripe = this.stripeFor(roles);
+        synchronized (stripe) {
+            RoleOverrideMap existing = stripe.maps.getAndMoveToFirst(roles);
+            if (existing != null) {
+                return existing;
+            }
+
+            // the caller's bitset may be reused, so keep a copy of it as the key
+            stripe.maps.putAndMoveToFirst(roles.clone(), overrides);
+            if (stripe.maps.size() > MAX_SIZE_PER_STRIPE) {
+                stripe.maps.removeLast();
+            }
+            return overrides;
+        }
+    }
+
+    private static final class Stripe {
+        final Object2ObjectLinkedOpenCustomHashMap<long[], RoleOverrideMap> maps = new Object2ObjectLinkedOpenCustomHashMap<>(LongArrays.HASH_STRATEGY);
+    }
+}
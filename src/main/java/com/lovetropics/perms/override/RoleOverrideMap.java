@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public final class RoleOverrideMap implements RoleOverrideReader {
@@ -22,15 +23,21 @@ public final class RoleOverrideMap implements RoleOverrideReader {
             .xmap(RoleOverrideMap::new, m -> m.overrides);
 
     private final Map<RoleOverrideType<?>, List<Object>> overrides;
-    private final Map<RoleOverrideType<?>, Object> combinedOverrides = new Reference2ObjectOpenHashMap<>();
+    private final Map<RoleOverrideType<?>, Object> combinedOverrides;
 
     private RoleOverrideMap(Map<RoleOverrideType<?>, List<Object>> overrides) {
         this.overrides = new Reference2ObjectOpenHashMap<>(overrides);
+        this.combinedOverrides = new Reference2ObjectOpenHashMap<>();
         overrides.forEach((type, values) -> {
             combinedOverrides.put(type, combineOverridesUnchecked(type, values));
         });
     }
 
+    private RoleOverrideMap(Map<RoleOverrideType<?>, List<Object>> overrides, Map<RoleOverrideType<?>, Object> combinedOverrides) {
+        this.overrides = overrides;
+        this.combinedOverrides = combinedOverrides;
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> T combineOverridesUnchecked(RoleOverrideType<T> type, List<?> overrides) {
         return type.build((List<T>) overrides);
@@ -52,6 +59,48 @@ public final class RoleOverrideMap implements RoleOverrideReader {
         }
     }
 
+    /**
+     * Notifies only the types whose combined value differs from the given previous overrides, including types that
+     * are no longer present.
+     */
+    public void notifyChange(ServerPlayer player, RoleOverrideMap previous) {
+        for (Map.Entry<RoleOverrideType<?>, Object> entry : combinedOverrides.entrySet()) {
+            if (!Objects.equals(entry.getValue(), previous.combinedOverrides.get(entry.getKey()))) {
+                entry.getKey().notifyChange(player);
+            }
+        }
+        for (RoleOverrideType<?> override : previous.combinedOverrides.keySet()) {
+            if (!combinedOverrides.containsKey(override)) {
+                override.notifyChange(player);
+            }
+        }
+    }
+
+    /**
+     * Combines the overrides collected by the given builder for the given types, and keeps the combined values of
+     * every other type from this map.
+     */
+    public RoleOverrideMap rebuild(Set<RoleOverrideType<?>> types, Builder builder) {
+        if (types.isEmpty()) {
+            return this;
+        }
+
+        Map<RoleOverrideType<?>, List<Object>> overrides = new Reference2ObjectOpenHashMap<>(this.overrides);
+        Map<RoleOverrideType<?>, Object> combinedOverrides = new Reference2ObjectOpenHashMap<>(this.combinedOverrides);
+        for (RoleOverrideType<?> type : types) {
+            List<Object> values = builder.overrides.get(type);
+            if (values != null) {
+                overrides.put(type, values);
+                combinedOverrides.put(type, combineOverridesUnchecked(type, values));
+            } else {
+                overrides.remove(type);
+                combinedOverrides.remove(type);
+            }
+        }
+
+        return new RoleOverrideMap(overrides, combinedOverrides);
+    }
+
     @Override
     @Nullable
     @SuppressWarnings("unchecked")
@@ -85,6 +134,16 @@ public final class RoleOverrideMap implements RoleOverrideReader {
             return this;
         }
 
+        public Builder addAll(RoleOverrideReader overrides, Set<RoleOverrideType<?>> types) {
+            for (RoleOverrideType<?> type : types) {
+                Object override = overrides.getOrNull(type);
+                if (override != null) {
+                    addUnchecked(type, override);
+                }
+            }
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         private <T> Builder addUnchecked(RoleOverrideType<T> type, Object override) {
             getOrCreateOverrides(type).add((T) override);
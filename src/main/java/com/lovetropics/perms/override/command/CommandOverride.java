@@ -70,4 +70,15 @@ public final class CommandOverride {
     public PermissionResult test(MatchableCommand command) {
         return this.rules.test(command);
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        return obj instanceof CommandOverride override && this.rules.equals(override.rules);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.rules.hashCode();
+    }
 }
@@ -54,6 +54,17 @@ public final class CommandOverrideRules {
         return PermissionResult.PASS;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        return obj instanceof CommandOverrideRules rules && Arrays.equals(this.rules, rules.rules);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.rules);
+    }
+
     @Override
     public String toString() {
         return Arrays.toString(this.rules);
@@ -91,6 +102,32 @@ public final class CommandOverrideRules {
             return this.patterns.length;
         }
 
+        // patterns do not implement equals, so compare them by their source
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Rule rule) || !this.result.equals(rule.result) || this.patterns.length != rule.patterns.length) {
+                return false;
+            }
+            for (int i = 0; i < this.patterns.length; i++) {
+                Pattern pattern = this.patterns[i];
+                Pattern otherPattern = rule.patterns[i];
+                if (!pattern.pattern().equals(otherPattern.pattern()) || pattern.flags() != otherPattern.flags()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = this.result.hashCode();
+            for (Pattern pattern : this.patterns) {
+                hash = 31 * hash + pattern.pattern().hashCode();
+            }
+            return hash;
+        }
+
         @Override
         public String toString() {
             return "\"" + Arrays.toString(this.patterns) + "\"=" + this.result;
@@ -26,6 +26,21 @@ import net.neoforged.neoforge.event.tick.PlayerTickEvent;
 
 @EventBusSubscriber(modid = LTPermissions.ID)
 public final class ProtectionEventDispatcher {
+    private static final ProtectionRule[] CLICK_BLOCK_RULES = {
+            ProtectionRule.INTERACT, ProtectionRule.INTERACT_BLOCKS, ProtectionRule.INTERACT_ITEMS,
+            ProtectionRule.PLACE, ProtectionRule.MODIFY_BOOKSHELVES, ProtectionRule.MODIFY
+    };
+    private static final ProtectionRule[] INTERACT_ENTITY_RULES = {
+            ProtectionRule.INTERACT, ProtectionRule.INTERACT_ENTITIES,
+            ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY_ARMOR_STANDS, ProtectionRule.MODIFY
+    };
+    private static final ProtectionRule[] ATTACK_ENTITY_RULES = {
+            ProtectionRule.ATTACK, ProtectionRule.PVP, ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY
+    };
+    private static final ProtectionRule[] DAMAGE_RULES = {
+            ProtectionRule.DAMAGE, ProtectionRule.PLAYER_DAMAGE, ProtectionRule.FALL_DAMAGE
+    };
+
     @SubscribeEvent
     public static void onTickPlayer(PlayerTickEvent.Pre event) {
         if (event.getEntity() instanceof ServerPlayer player) {
@@ -67,7 +82,8 @@ public final class ProtectionEventDispatcher {
         if (event.getLevel() instanceof ServerLevel level) {
             ProtectionManager protect = protect(level);
             EventSource source = EventSource.forEntityAt(event.getEntity(), event.getPos());
-            if (protect.denies(source, ProtectionRule.INTERACT) || protect.denies(source, ProtectionRule.INTERACT_BLOCKS)) {
+            ProtectionResults results = protect.test(source, ProtectionRule.INTERACT, ProtectionRule.INTERACT_BLOCKS);
+            if (results.denies(ProtectionRule.INTERACT) || results.denies(ProtectionRule.INTERACT_BLOCKS)) {
                 event.setCanceled(true);
             }
         }
@@ -78,20 +94,21 @@ public final class ProtectionEventDispatcher {
         if (event.getLevel() instanceof ServerLevel level) {
             ProtectionManager protect = protect(level);
             EventSource source = EventSource.forEntityAt(event.getEntity(), event.getPos());
-            if (protect.denies(source, ProtectionRule.INTERACT)) {
+            ProtectionResults results = protect.test(source, CLICK_BLOCK_RULES);
+            if (results.denies(ProtectionRule.INTERACT)) {
                 event.setCanceled(true);
                 return;
             }
 
-            if (protect.denies(source, ProtectionRule.INTERACT_BLOCKS)) {
+            if (results.denies(ProtectionRule.INTERACT_BLOCKS)) {
                 event.setUseBlock(TriState.FALSE);
             }
-            if (protect.denies(source, ProtectionRule.INTERACT_ITEMS) || (isBlockItem(event) && protect.denies(source, ProtectionRule.PLACE))) {
+            if (results.denies(ProtectionRule.INTERACT_ITEMS) || (isBlockItem(event) && results.denies(ProtectionRule.PLACE))) {
                 event.setUseItem(TriState.FALSE);
             }
 
             final BlockState state = level.getBlockState(event.getPos());
-            if (state.is(Blocks.CHISELED_BOOKSHELF) && protect.denies(source, ProtectionRule.MODIFY_BOOKSHELVES, ProtectionRule.MODIFY)) {
+            if (state.is(Blocks.CHISELED_BOOKSHELF) && results.denies(ProtectionRule.MODIFY_BOOKSHELVES, ProtectionRule.MODIFY)) {
                 event.setUseBlock(TriState.FALSE);
             }
         }
@@ -106,7 +123,8 @@ public final class ProtectionEventDispatcher {
         if (event.getLevel() instanceof ServerLevel level) {
             ProtectionManager protect = protect(level);
             EventSource source = EventSource.forEntityAt(event.getEntity(), event.getPos());
-            if (protect.denies(source, ProtectionRule.INTERACT) || protect.denies(source, ProtectionRule.INTERACT_ITEMS)) {
+            ProtectionResults results = protect.test(source, ProtectionRule.INTERACT, ProtectionRule.INTERACT_ITEMS);
+            if (results.denies(ProtectionRule.INTERACT) || results.denies(ProtectionRule.INTERACT_ITEMS)) {
                 event.setCanceled(true);
             }
         }
@@ -117,14 +135,15 @@ public final class ProtectionEventDispatcher {
         if (event.getLevel() instanceof ServerLevel level) {
             ProtectionManager protect = protect(level);
             EventSource source = EventSource.forEntityAt(event.getEntity(), event.getPos());
-            if (protect.denies(source, ProtectionRule.INTERACT) || protect.denies(source, ProtectionRule.INTERACT_ENTITIES)) {
+            ProtectionResults results = protect.test(source, INTERACT_ENTITY_RULES);
+            if (results.denies(ProtectionRule.INTERACT) || results.denies(ProtectionRule.INTERACT_ENTITIES)) {
                 event.setCanceled(true);
                 return;
             }
 
-            if (event.getTarget() instanceof ItemFrame && protect.denies(source, ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY)) {
+            if (event.getTarget() instanceof ItemFrame && results.denies(ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY)) {
                 event.setCanceled(true);
-            } else if (event.getTarget() instanceof ArmorStand && protect.denies(source, ProtectionRule.MODIFY_ARMOR_STANDS, ProtectionRule.MODIFY)) {
+            } else if (event.getTarget() instanceof ArmorStand && results.denies(ProtectionRule.MODIFY_ARMOR_STANDS, ProtectionRule.MODIFY)) {
                 event.setCanceled(true);
             }
         }
@@ -136,15 +155,16 @@ public final class ProtectionEventDispatcher {
         if (event.getEntity() instanceof ServerPlayer player && target.level() instanceof ServerLevel level) {
             ProtectionManager protect = protect(level);
             EventSource source = EventSource.forEntityAt(player, target.blockPosition());
-            if (protect.denies(source, ProtectionRule.ATTACK)) {
+            ProtectionResults results = protect.test(source, ATTACK_ENTITY_RULES);
+            if (results.denies(ProtectionRule.ATTACK)) {
                 event.setCanceled(true);
                 return;
-            } else if (target instanceof Player && protect.denies(source, ProtectionRule.PVP)) {
+            } else if (target instanceof Player && results.denies(ProtectionRule.PVP)) {
                 event.setCanceled(true);
                 return;
             }
 
-            if (event.getTarget() instanceof ItemFrame && protect.denies(source, ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY)) {
+            if (event.getTarget() instanceof ItemFrame && results.denies(ProtectionRule.MODIFY_ITEM_FRAMES, ProtectionRule.MODIFY)) {
                 event.setCanceled(true);
             }
         }
@@ -161,17 +181,18 @@ public final class ProtectionEventDispatcher {
             ProtectionManager protect = protect(level);
 
             EventSource source = EventSource.forEntity(entity);
-            if (protect.denies(source, ProtectionRule.DAMAGE)) {
+            ProtectionResults results = protect.test(source, DAMAGE_RULES);
+            if (results.denies(ProtectionRule.DAMAGE)) {
                 event.setNewDamage(0);
                 return;
             }
 
-            if (entity instanceof Player && protect.denies(source, ProtectionRule.PLAYER_DAMAGE)) {
+            if (entity instanceof Player && results.denies(ProtectionRule.PLAYER_DAMAGE)) {
                 event.setNewDamage(0);
                 return;
             }
 
-            if ((event.getSource().is(DamageTypeTags.IS_FALL) || event.getSource().is(DamageTypes.FLY_INTO_WALL)) && protect.denies(source, ProtectionRule.FALL_DAMAGE)) {
+            if ((event.getSource().is(DamageTypeTags.IS_FALL) || event.getSource().is(DamageTypes.FLY_INTO_WALL)) && results.denies(ProtectionRule.FALL_DAMAGE)) {
                 event.setNewDamage(0);
             }
         }
@@ -16,6 +16,7 @@ import com.mojang.serialization.DataResult;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
@@ -49,6 +50,7 @@ public final class ProtectionManager extends SavedData {
 
     private final SortedAuthorityHashMap<UserAuthority> userAuthorities = new SortedAuthorityHashMap<>();
     private final IndexedAuthorityMap<Authority> allAuthorities = new IndexedAuthorityMap<>();
+    private final ProtectionSectionCache sectionCache = new ProtectionSectionCache(this.allAuthorities);
 
     private BuiltinAuthority builtinUniverse = BuiltinAuthority.universe();
     private final Reference2ObjectMap<ResourceKey<Level>, BuiltinAuthority> builtinDimensions = new Reference2ObjectOpenHashMap<>();
@@ -62,8 +64,15 @@ public final class ProtectionManager extends SavedData {
     }
 
     public PermissionResult test(EventSource source, ProtectionRule rule) {
-        Iterable<Authority> authorities = this.allAuthorities.selectByDimension(source, rule);
-        for (Authority authority : authorities) {
+        ResourceKey<Level> dimension = source.getDimension();
+        BlockPos pos = source.getPos();
+        if (dimension != null && pos != null) {
+            return this.sectionCache.get(dimension, pos, rule).test(source);
+        }
+
+        Authority[] authorities = this.allAuthorities.selectByDimension(source, rule);
+        for (int i = 0; i < authorities.length; i++) {
+            Authority authority = authorities[i];
             if (!authority.eventFilter().accepts(source)) {
                 continue;
             }
@@ -81,14 +90,30 @@ public final class ProtectionManager extends SavedData {
         return this.test(source, rule).isDenied();
     }
 
-    public boolean denies(EventSource source, ProtectionRule... rules) {
-        for (final ProtectionRule rule : rules) {
-            final PermissionResult result = test(source, rule);
-            if (result.isTerminator()) {
-                return result.isDenied();
-            }
+    /**
+     * Tests several rules against one event with a single pass over the authorities, so that each authority is only
+     * filtered once no matter how many of the rules it decides.
+     */
+    public ProtectionResults test(EventSource source, ProtectionRule... rules) {
+        ResourceKey<Level> dimension = source.getDimension();
+        BlockPos pos = source.getPos();
+
+        ProtectionSectionCache.CombinedResolution resolution;
+        if (dimension != null && pos != null) {
+            resolution = this.sectionCache.getCombined(dimension, pos);
+        } else {
+            resolution = ProtectionSectionCache.CombinedResolution.of(this.allAuthorities.selectAllByDimension(source));
         }
-        return false;
+
+        return new ProtectionResults(rules, resolution.test(source, rules));
+    }
+
+    public boolean denies(EventSource source, ProtectionRule... rules) {
+        return this.test(source, rules).denies(rules);
+    }
+
+    public ProtectionSectionCache.Stats sectionCacheStats() {
+        return this.sectionCache.stats();
     }
 
     @Nullable
@@ -129,6 +154,7 @@ public final class ProtectionManager extends SavedData {
         }
 
         this.allAuthorities.addDimensionIndex(level.dimension());
+        this.invalidateRules();
     }
 
     private void onLevelUnload(ServerLevel level) {
@@ -139,6 +165,7 @@ public final class ProtectionManager extends SavedData {
         }
 
         this.allAuthorities.removeDimensionIndex(level.dimension());
+        this.invalidateRules();
     }
 
     private void onReload() {
@@ -158,6 +185,7 @@ public final class ProtectionManager extends SavedData {
     public boolean addAuthority(UserAuthority authority) {
         if (this.userAuthorities.add(authority)) {
             this.allAuthorities.add(authority);
+            this.invalidateRules();
             this.invalidateBehaviors();
             return true;
         } else {
@@ -168,6 +196,7 @@ public final class ProtectionManager extends SavedData {
     public boolean removeAuthority(UserAuthority authority) {
         if (this.userAuthorities.remove(authority)) {
             this.allAuthorities.remove(authority);
+            this.invalidateRules();
             this.invalidateBehaviors();
             return true;
         } else {
@@ -185,6 +214,7 @@ public final class ProtectionManager extends SavedData {
                 this.replaceBuiltinAuthority((BuiltinAuthority) from, (BuiltinAuthority) to);
             }
 
+            this.invalidateRules();
             this.invalidateBehaviors();
         }
     }
@@ -208,6 +238,10 @@ public final class ProtectionManager extends SavedData {
         }
     }
 
+    private void invalidateRules() {
+        this.sectionCache.clear();
+    }
+
     private void invalidateBehaviors() {
         ProtectionPlayerTracker.INSTANCE.invalidate();
     }
@@ -316,12 +350,14 @@ public final class ProtectionManager extends SavedData {
         } else {
             this.allAuthorities.replace(lastAuthority, authority);
         }
+        this.invalidateRules();
     }
 
     private void addBuiltinUniverse(BuiltinAuthority authority) {
         BuiltinAuthority lastAuthority = this.builtinUniverse;
         this.builtinUniverse = authority;
         this.allAuthorities.replace(lastAuthority, authority);
+        this.invalidateRules();
     }
 
     @Override
@@ -0,0 +1,43 @@
+package com.lovetropics.perms.protection;
+
+import com.lovetropics.lib.permission.PermissionResult;
+
+/**
+ * The results of testing several rules against one event, as given by {@link ProtectionManager#test(EventSource, ProtectionRule...)}.
+ */
+public final class ProtectionResults {
+    private final ProtectionRule[] rules;
+    private final PermissionResult[] results;
+
+    ProtectionResults(ProtectionRule[] rules, PermissionResult[] results) {
+        this.rules = rules;
+        this.results = results;
+    }
+
+    /**
+     * @return the result of the given rule, which must have been one of the tested rules
+     */
+    public PermissionResult get(ProtectionRule rule) {
+        ProtectionRule[] rules = this.rules;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i] == rule) {
+                return this.results[i];
+            }
+        }
+        throw new IllegalArgumentException("Rule '" + rule + "' was not tested");
+    }
+
+    /**
+     * @return whether the first of the given rules to give a terminating result denies the event, in the same way as
+     * {@link ProtectionManager#denies(EventSource, ProtectionRule...)}
+     */
+    public boolean denies(ProtectionRule... rules) {
+        for (ProtectionRule rule : rules) {
+            PermissionResult result = this.get(rule);
+            if (result.isTerminator()) {
+                return result.isDenied();
+            }
+        }
+        return false;
+    }
+}
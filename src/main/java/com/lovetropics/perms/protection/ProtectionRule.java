@@ -4,6 +4,8 @@ import com.lovetropics.lib.codec.CodecRegistry;
 import com.mojang.serialization.Codec;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public final class ProtectionRule {
@@ -11,6 +13,10 @@ public final class ProtectionRule {
 
     public static final Codec<ProtectionRule> CODEC = REGISTRY;
 
+    // rule ids index bits of a long, see ProtectionRuleMap
+    public static final int MAX_RULES = Long.SIZE;
+    private static final List<ProtectionRule> BY_ID = new ArrayList<>();
+
     public static final ProtectionRule BREAK = register("break");
     public static final ProtectionRule PLACE = register("place");
 
@@ -37,15 +43,24 @@ public final class ProtectionRule {
     public static final ProtectionRule CRAFT = register("craft");
 
     private final String key;
+    private final int id;
 
-    ProtectionRule(String key) {
+    ProtectionRule(String key, int id) {
         this.key = key;
+        this.id = id;
     }
 
     public String key() {
         return this.key;
     }
 
+    /**
+     * @return the dense id of this rule, in registration order and always less than {@link #MAX_RULES}
+     */
+    public int id() {
+        return this.id;
+    }
+
     @Override
     public String toString() {
         return this.key;
@@ -61,13 +76,23 @@ public final class ProtectionRule {
         return REGISTRY.get(key);
     }
 
+    public static ProtectionRule byId(int id) {
+        return BY_ID.get(id);
+    }
+
     public static Set<String> keySet() {
         return REGISTRY.keySet();
     }
 
     public static ProtectionRule register(String key) {
-        ProtectionRule rule = new ProtectionRule(key);
+        int id = BY_ID.size();
+        if (id >= MAX_RULES) {
+            throw new IllegalStateException("Cannot register protection rule '" + key + "', as there are already " + MAX_RULES + " rules");
+        }
+
+        ProtectionRule rule = new ProtectionRule(key, id);
         REGISTRY.register(key, rule);
+        BY_ID.add(rule);
         return rule;
     }
 }
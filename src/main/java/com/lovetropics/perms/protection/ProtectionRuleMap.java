@@ -3,6 +3,7 @@ package com.lovetropics.perms.protection;
 import com.lovetropics.lib.permission.PermissionResult;
 import com.mojang.serialization.Codec;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArraySet;
 
 import javax.annotation.Nonnull;
 import java.util.Collections;
@@ -10,33 +11,32 @@ import java.util.Map;
 import java.util.Set;
 
 public final class ProtectionRuleMap {
-    public static final ProtectionRuleMap EMPTY = new ProtectionRuleMap();
+    public static final ProtectionRuleMap EMPTY = new ProtectionRuleMap(0L, 0L);
 
     public static final Codec<ProtectionRuleMap> CODEC = Codec.unboundedMap(ProtectionRule.CODEC, PermissionResult.CODEC).xmap(
             map -> {
-                ProtectionRuleMap rules = new ProtectionRuleMap();
-                rules.map.putAll(map);
+                ProtectionRuleMap rules = EMPTY;
+                for (Map.Entry<ProtectionRule, PermissionResult> entry : map.entrySet()) {
+                    rules = rules.with(entry.getKey(), entry.getValue());
+                }
                 return rules;
             },
-            rules -> rules.map
+            rules -> {
+                Map<ProtectionRule, PermissionResult> map = new Reference2ObjectOpenHashMap<>();
+                for (ProtectionRule rule : rules.keySet()) {
+                    map.put(rule, rules.test(rule));
+                }
+                return map;
+            }
     );
 
-    private final Map<ProtectionRule, PermissionResult> map;
+    // bits indexed by ProtectionRule#id
+    private final long allowed;
+    private final long denied;
 
-    private ProtectionRuleMap() {
-        this.map = new Reference2ObjectOpenHashMap<>();
-    }
-
-    ProtectionRuleMap(ProtectionRuleMap map) {
-        this.map = new Reference2ObjectOpenHashMap<>(map.map);
-    }
-
-    private void set(ProtectionRule rule, PermissionResult result) {
-        if (result != PermissionResult.PASS) {
-            this.map.put(rule, result);
-        } else {
-            this.map.remove(rule);
-        }
+    private ProtectionRuleMap(long allowed, long denied) {
+        this.allowed = allowed;
+        this.denied = denied;
     }
 
     public ProtectionRuleMap with(ProtectionRule rule, PermissionResult result) {
@@ -44,25 +44,51 @@ public final class ProtectionRuleMap {
             return this;
         }
 
-        ProtectionRuleMap map = this.copy();
-        map.set(rule, result);
-        return map;
+        long bit = 1L << rule.id();
+        long allowed = this.allowed & ~bit;
+        long denied = this.denied & ~bit;
+        if (result.isDenied()) {
+            denied |= bit;
+        } else if (result.isTerminator()) {
+            allowed |= bit;
+        }
+        return new ProtectionRuleMap(allowed, denied);
     }
 
     @Nonnull
     public PermissionResult test(ProtectionRule rule) {
-        return this.map.getOrDefault(rule, PermissionResult.PASS);
+        long bit = 1L << rule.id();
+        if ((this.denied & bit) != 0) {
+            return PermissionResult.DENY;
+        } else if ((this.allowed & bit) != 0) {
+            return PermissionResult.ALLOW;
+        }
+        return PermissionResult.PASS;
+    }
+
+    /**
+     * @param mask a set of rules, as bits indexed by {@link ProtectionRule#id}
+     * @return whether this map gives a terminating result for any of the given rules
+     */
+    public boolean decidesAny(long mask) {
+        return ((this.allowed | this.denied) & mask) != 0;
     }
 
     public ProtectionRuleMap copy() {
-        return new ProtectionRuleMap(this);
+        return new ProtectionRuleMap(this.allowed, this.denied);
     }
 
     public boolean isEmpty() {
-        return this.map.isEmpty();
+        return (this.allowed | this.denied) == 0;
     }
 
     public Set<ProtectionRule> keySet() {
-        return Collections.unmodifiableSet(this.map.keySet());
+        long bits = this.allowed | this.denied;
+        Set<ProtectionRule> rules = new ReferenceArraySet<>(Long.bitCount(bits));
+        while (bits != 0) {
+            rules.add(ProtectionRule.byId(Long.numberOfTrailingZeros(bits)));
+            bits &= bits - 1;
+        }
+        return Collections.unmodifiableSet(rules);
     }
 }
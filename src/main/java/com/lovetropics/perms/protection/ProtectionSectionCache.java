@@ -0,0 +1,255 @@
+package com.lovetropics.perms.protection;
+
+import com.lovetropics.lib.BlockBox;
+import com.lovetropics.lib.permission.PermissionResult;
+import com.lovetropics.perms.protection.authority.Authority;
+import com.lovetropics.perms.protection.authority.map.IndexedAuthorityMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches which authorities decide each rule within a chunk section. Authorities that cover the whole section are only
+ * tested against their exclusions, authorities that partly cover it keep their full filter, and authorities that miss
+ * it are left out entirely, so a section that no authority touches resolves straight to {@link PermissionResult#PASS}.
+ * <p>
+ * The cache must be cleared whenever any authority or dimension index changes, and must only be used from the server
+ * thread. The least recently used sections of each dimension are evicted past a fixed size.
+ */
+public final class ProtectionSectionCache {
+    private static final int MAX_SECTIONS = 4096;
+
+    private static final Resolution EMPTY = new Resolution(new EventFilter[0], new PermissionResult[0]);
+
+    private final IndexedAuthorityMap<Authority> authorities;
+    private final Reference2ObjectMap<ResourceKey<Level>, Long2ObjectLinkedOpenHashMap<Section>> dimensions = new Reference2ObjectOpenHashMap<>();
+
+    private long hits;
+    private long misses;
+
+    ProtectionSectionCache(IndexedAuthorityMap<Authority> authorities) {
+        this.authorities = authorities;
+    }
+
+    Resolution get(ResourceKey<Level> dimension, BlockPos pos, ProtectionRule rule) {
+        long sectionPos = SectionPos.asLong(pos);
+        Section section = this.getSection(dimension, sectionPos);
+
+        Resolution resolution = section.byRule.get(rule);
+        if (resolution != null) {
+            this.hits++;
+            return resolution;
+        }
+
+        this.misses++;
+        resolution = this.resolve(dimension, SectionPos.of(sectionPos), rule);
+        section.byRule.put(rule, resolution);
+        return resolution;
+    }
+
+    CombinedResolution getCombined(ResourceKey<Level> dimension, BlockPos pos) {
+        long sectionPos = SectionPos.asLong(pos);
+        Section section = this.getSection(dimension, sectionPos);
+
+        CombinedResolution resolution = section.combined;
+        if (resolution != null) {
+            this.hits++;
+            return resolution;
+        }
+
+        this.misses++;
+        resolution = this.resolveCombined(dimension, SectionPos.of(sectionPos));
+        section.combined = resolution;
+        return resolution;
+    }
+
+    private Section getSection(ResourceKey<Level> dimension, long sectionPos) {
+        Long2ObjectLinkedOpenHashMap<Section> sections = this.dimensions.get(dimension);
+        if (sections == null) {
+            sections = new Long2ObjectLinkedOpenHashMap<>();
+            this.dimensions.put(dimension, sections);
+        }
+
+        Section section = sections.getAndMoveToFirst(sectionPos);
+        if (section == null) {
+            section = new Section();
+            sections.putAndMoveToFirst(sectionPos, section);
+            if (sections.size() > MAX_SECTIONS) {
+                sections.removeLast();
+            }
+        }
+        return section;
+    }
+
+    private Resolution resolve(ResourceKey<Level> dimension, SectionPos section, ProtectionRule rule) {
+        BlockPos origin = section.origin();
+        BlockBox box = sectionBox(origin);
+
+        List<EventFilter> filters = new ArrayList<>();
+        List<PermissionResult> results = new ArrayList<>();
+        for (Authority authority : this.authorities.selectByDimension(EventSource.at(dimension, origin), rule)) {
+            PermissionResult result = authority.rules().test(rule);
+            if (!result.isTerminator()) {
+                continue;
+            }
+
+            EventFilter filter = filterWithin(authority, dimension, box);
+            if (filter != null) {
+                filters.add(filter);
+                results.add(result);
+            }
+        }
+
+        if (filters.isEmpty()) {
+            return EMPTY;
+        }
+        return new Resolution(filters.toArray(new EventFilter[0]), results.toArray(new PermissionResult[0]));
+    }
+
+    private CombinedResolution resolveCombined(ResourceKey<Level> dimension, SectionPos section) {
+        BlockPos origin = section.origin();
+        BlockBox box = sectionBox(origin);
+
+        List<EventFilter> filters = new ArrayList<>();
+        List<ProtectionRuleMap> rules = new ArrayList<>();
+        for (Authority authority : this.authorities.selectAllByDimension(EventSource.at(dimension, origin))) {
+            EventFilter filter = filterWithin(authority, dimension, box);
+            if (filter != null) {
+                filters.add(filter);
+                rules.add(authority.rules());
+            }
+        }
+
+        return new CombinedResolution(filters.toArray(new EventFilter[0]), rules.toArray(new ProtectionRuleMap[0]));
+    }
+
+    private static BlockBox sectionBox(BlockPos origin) {
+        return BlockBox.of(origin, origin.offset(SectionPos.SECTION_MAX_INDEX, SectionPos.SECTION_MAX_INDEX, SectionPos.SECTION_MAX_INDEX));
+    }
+
+    /**
+     * @return the part of the authority's filter that can still reject events within the given box, or {@code null} if
+     * the authority never applies within it
+     */
+    @Nullable
+    private static EventFilter filterWithin(Authority authority, ResourceKey<Level> dimension, BlockBox box) {
+        if (authority.containsBox(dimension, box)) {
+            return authority.exclusions();
+        } else if (intersects(authority.getBounds(dimension), box)) {
+            return authority.eventFilter();
+        } else {
+            return null;
+        }
+    }
+
+    private static boolean intersects(@Nullable BlockBox bounds, BlockBox box) {
+        if (bounds == null) {
+            return false;
+        }
+        BlockPos min = bounds.min();
+        BlockPos max = bounds.max();
+        return min.getX() <= box.max().getX() && max.getX() >= box.min().getX()
+                && min.getY() <= box.max().getY() && max.getY() >= box.min().getY()
+                && min.getZ() <= box.max().getZ() && max.getZ() >= box.min().getZ();
+    }
+
+    void clear() {
+        this.dimensions.clear();
+    }
+
+    public Stats stats() {
+        int size = 0;
+        for (Long2ObjectLinkedOpenHashMap<Section> sections : this.dimensions.values()) {
+            size += sections.size();
+        }
+        return new Stats(size, this.hits, this.misses);
+    }
+
+    private static final class Section {
+        final Map<ProtectionRule, Resolution> byRule = new Reference2ObjectOpenHashMap<>();
+        @Nullable
+        CombinedResolution combined;
+    }
+
+    /**
+     * The authorities that may decide a rule within one section, in priority order, along with the result that each
+     * of them gives once its filter accepts an event.
+     */
+    record Resolution(EventFilter[] filters, PermissionResult[] results) {
+        PermissionResult test(EventSource source) {
+            EventFilter[] filters = this.filters;
+            for (int i = 0; i < filters.length; i++) {
+                if (filters[i].accepts(source)) {
+                    return this.results[i];
+                }
+            }
+            return PermissionResult.PASS;
+        }
+    }
+
+    /**
+     * Every authority that may decide any rule within one section, in priority order, so that several rules can be
+     * tested while filtering each authority only once.
+     */
+    record CombinedResolution(EventFilter[] filters, ProtectionRuleMap[] rules) {
+        static CombinedResolution of(Authority[] authorities) {
+            EventFilter[] filters = new EventFilter[authorities.length];
+            ProtectionRuleMap[] rules = new ProtectionRuleMap[authorities.length];
+            for (int i = 0; i < authorities.length; i++) {
+                filters[i] = authorities[i].eventFilter();
+                rules[i] = authorities[i].rules();
+            }
+            return new CombinedResolution(filters, rules);
+        }
+
+        PermissionResult[] test(EventSource source, ProtectionRule[] rules) {
+            PermissionResult[] results = new PermissionResult[rules.length];
+
+            long undecided = 0;
+            for (ProtectionRule rule : rules) {
+                undecided |= 1L << rule.id();
+            }
+
+            EventFilter[] filters = this.filters;
+            for (int i = 0; i < filters.length && undecided != 0; i++) {
+                ProtectionRuleMap authorityRules = this.rules[i];
+                if (!authorityRules.decidesAny(undecided) || !filters[i].accepts(source)) {
+                    continue;
+                }
+
+                for (int j = 0; j < rules.length; j++) {
+                    if (results[j] == null) {
+                        PermissionResult result = authorityRules.test(rules[j]);
+                        if (result.isTerminator()) {
+                            results[j] = result;
+                            undecided &= ~(1L << rules[j].id());
+                        }
+                    }
+                }
+            }
+
+            for (int j = 0; j < rules.length; j++) {
+                if (results[j] == null) {
+                    results[j] = PermissionResult.PASS;
+                }
+            }
+            return results;
+        }
+    }
+
+    public record Stats(int size, long hits, long misses) {
+        public double hitRate() {
+            long total = this.hits + this.misses;
+            return total > 0 ? (double) this.hits / total : 0.0;
+        }
+    }
+}
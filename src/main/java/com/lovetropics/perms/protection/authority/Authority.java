@@ -1,5 +1,6 @@
 package com.lovetropics.perms.protection.authority;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.lib.permission.PermissionResult;
 import com.lovetropics.lib.permission.role.Role;
 import com.lovetropics.perms.protection.EventFilter;
@@ -7,8 +8,13 @@ import com.lovetropics.perms.protection.ProtectionExclusions;
 import com.lovetropics.perms.protection.ProtectionRule;
 import com.lovetropics.perms.protection.ProtectionRuleMap;
 import com.lovetropics.perms.protection.authority.behavior.AuthorityBehaviorMap;
+import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
 import com.mojang.authlib.GameProfile;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
 
 public interface Authority extends Comparable<Authority> {
     String key();
@@ -19,6 +25,20 @@ public interface Authority extends Comparable<Authority> {
 
     EventFilter eventFilter();
 
+    /**
+     * @return a box around every position in the given dimension that this authority may apply to, or {@code null} if
+     * it never applies there
+     * @see AuthorityShape#getBounds
+     */
+    @Nullable
+    BlockBox getBounds(ResourceKey<Level> dimension);
+
+    /**
+     * @return {@code true} if this authority is known to apply to every position of the given box, ignoring exclusions
+     * @see AuthorityShape#containsBox
+     */
+    boolean containsBox(ResourceKey<Level> dimension, BlockBox box);
+
     ProtectionExclusions exclusions();
 
     AuthorityBehaviorMap behavior();
@@ -1,10 +1,13 @@
 package com.lovetropics.perms.protection.authority;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.perms.protection.EventFilter;
 import com.lovetropics.perms.protection.EventSource;
 import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
 import com.mojang.serialization.Codec;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
 import java.util.Map;
@@ -60,6 +63,30 @@ public final class AuthorityShapes implements EventFilter {
         return false;
     }
 
+    /**
+     * @see AuthorityShape#getBounds
+     */
+    @Nullable
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        BlockBox bounds = null;
+        for (AuthorityShape shape : this.array) {
+            bounds = AuthorityShape.union(bounds, shape.getBounds(dimension));
+        }
+        return bounds;
+    }
+
+    /**
+     * @see AuthorityShape#containsBox
+     */
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        for (AuthorityShape shape : this.array) {
+            if (shape.containsBox(dimension, box)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Set<String> keySet() {
         return this.map.keySet();
     }
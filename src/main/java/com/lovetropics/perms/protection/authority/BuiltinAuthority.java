@@ -1,16 +1,21 @@
 package com.lovetropics.perms.protection.authority;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.lib.permission.PermissionResult;
 import com.lovetropics.perms.protection.EventFilter;
+import com.lovetropics.perms.protection.EventSource;
 import com.lovetropics.perms.protection.ProtectionExclusions;
 import com.lovetropics.perms.protection.ProtectionRule;
 import com.lovetropics.perms.protection.ProtectionRuleMap;
 import com.lovetropics.perms.protection.authority.behavior.AuthorityBehaviorMap;
+import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.Level;
 
+import javax.annotation.Nullable;
+
 public final class BuiltinAuthority implements Authority {
     public static final int UNIVERSE_LEVEL = Integer.MIN_VALUE;
     public static final int DIMENSION_LEVEL = Integer.MIN_VALUE + 1;
@@ -105,6 +110,17 @@ public final class BuiltinAuthority implements Authority {
         return this.filterWithExclusions;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return this.filter.accepts(EventSource.allOf(dimension)) ? AuthorityShape.UNBOUNDED : null;
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return this.filter.accepts(EventSource.allOf(dimension));
+    }
+
     @Override
     public ProtectionExclusions exclusions() {
         return this.exclusions;
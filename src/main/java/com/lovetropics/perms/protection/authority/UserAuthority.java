@@ -1,5 +1,6 @@
 package com.lovetropics.perms.protection.authority;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.lib.permission.PermissionResult;
 import com.lovetropics.perms.protection.EventFilter;
 import com.lovetropics.perms.protection.ProtectionExclusions;
@@ -9,6 +10,10 @@ import com.lovetropics.perms.protection.authority.behavior.AuthorityBehaviorMap;
 import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
 
 public final class UserAuthority implements Authority {
     public static final Codec<UserAuthority> CODEC = RecordCodecBuilder.create(i -> i.group(
@@ -102,6 +107,17 @@ public final class UserAuthority implements Authority {
         return this.filterWithExclusions;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return this.shapes.getBounds(dimension);
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return this.shapes.containsBox(dimension, box);
+    }
+
     @Override
     public ProtectionExclusions exclusions() {
         return this.exclusions;
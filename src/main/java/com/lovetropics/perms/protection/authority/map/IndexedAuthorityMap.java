@@ -9,12 +9,13 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.Level;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -22,12 +23,12 @@ import java.util.stream.Stream;
 
 public final class IndexedAuthorityMap<A extends Authority> implements AuthorityMap<A> {
     private final AuthorityMap<A> main = new SortedAuthorityHashMap<>();
-    private final Index<A> globalIndex = new Index<>();
+    private final Index<A> globalIndex = new Index<>(null);
     private final Reference2ObjectMap<ResourceKey<Level>, Index<A>> dimensionIndex = new Reference2ObjectOpenHashMap<>();
 
     public void addDimensionIndex(ResourceKey<Level> dimension) {
         EventSource source = EventSource.allOf(dimension);
-        Index<A> index = new Index<>();
+        Index<A> index = new Index<>(dimension);
         for (A authority : this.main) {
             if (authority.eventFilter().accepts(source)) {
                 index.add(authority);
@@ -41,24 +42,40 @@ public final class IndexedAuthorityMap<A extends Authority> implements Authority
         this.dimensionIndex.remove(dimension);
     }
 
-    public Iterable<A> selectByDimension(EventSource source, ProtectionRule rule) {
+    /**
+     * @return the authorities with the given rule that may apply to the given event, in priority order. The array is
+     * shared, and must not be modified.
+     */
+    public Authority[] selectByDimension(EventSource source, ProtectionRule rule) {
         ResourceKey<Level> dimension = source.getDimension();
         if (dimension == null) {
-            AuthorityMap<A> map = this.globalIndex.byRule.get(rule);
-            if (map != null) {
-                return map;
-            }
+            return this.globalIndex.select(rule, null);
         }
 
         Index<A> dimensionIndex = this.dimensionIndex.get(dimension);
         if (dimensionIndex != null) {
-            AuthorityMap<A> map = dimensionIndex.byRule.get(rule);
-            if (map != null) {
-                return map;
-            }
+            return dimensionIndex.select(rule, source.getPos());
+        }
+
+        return SpatialAuthorityIndex.EMPTY;
+    }
+
+    /**
+     * @return every authority with any rule that may apply to the given event, in priority order. The array is shared,
+     * and must not be modified.
+     */
+    public Authority[] selectAllByDimension(EventSource source) {
+        ResourceKey<Level> dimension = source.getDimension();
+        if (dimension == null) {
+            return this.globalIndex.selectAll(null);
         }
 
-        return Collections.emptyList();
+        Index<A> dimensionIndex = this.dimensionIndex.get(dimension);
+        if (dimensionIndex != null) {
+            return dimensionIndex.selectAll(source.getPos());
+        }
+
+        return SpatialAuthorityIndex.EMPTY;
     }
 
     @Nullable
@@ -187,26 +204,78 @@ public final class IndexedAuthorityMap<A extends Authority> implements Authority
     }
 
     static final class Index<A extends Authority> {
+        // null for the global index, which is never selected by position
+        @Nullable
+        final ResourceKey<Level> dimension;
+
         final AuthorityMap<A> allWithBehavior = new SortedAuthorityHashMap<>();
-        final Map<ProtectionRule, AuthorityMap<A>> byRule = new Reference2ObjectOpenHashMap<>();
+        final AuthorityMap<A> allWithRules = new SortedAuthorityHashMap<>();
+        // indexed by ProtectionRule#id
+        @SuppressWarnings("unchecked")
+        final AuthorityMap<A>[] byRule = new AuthorityMap[ProtectionRule.MAX_RULES];
+
+        // snapshots of allWithRules and byRule, built lazily and dropped whenever any authority in this index changes
+        @Nullable
+        private SpatialAuthorityIndex allWithRulesSnapshot;
+        private final SpatialAuthorityIndex[] snapshotByRule = new SpatialAuthorityIndex[ProtectionRule.MAX_RULES];
+
+        Index(@Nullable ResourceKey<Level> dimension) {
+            this.dimension = dimension;
+        }
+
+        Authority[] select(ProtectionRule rule, @Nullable BlockPos pos) {
+            SpatialAuthorityIndex snapshot = this.snapshotByRule[rule.id()];
+            if (snapshot == null) {
+                AuthorityMap<A> map = this.byRule[rule.id()];
+                if (map == null) {
+                    return SpatialAuthorityIndex.EMPTY;
+                }
+                snapshot = SpatialAuthorityIndex.build(this.dimension, map);
+                this.snapshotByRule[rule.id()] = snapshot;
+            }
+            return snapshot.select(pos);
+        }
+
+        Authority[] selectAll(@Nullable BlockPos pos) {
+            SpatialAuthorityIndex snapshot = this.allWithRulesSnapshot;
+            if (snapshot == null) {
+                snapshot = SpatialAuthorityIndex.build(this.dimension, this.allWithRules);
+                this.allWithRulesSnapshot = snapshot;
+            }
+            return snapshot.select(pos);
+        }
+
+        private void invalidateSnapshots() {
+            this.allWithRulesSnapshot = null;
+            Arrays.fill(this.snapshotByRule, null);
+        }
 
         void clear() {
-            this.byRule.clear();
+            Arrays.fill(this.byRule, null);
             this.allWithBehavior.clear();
+            this.allWithRules.clear();
+            this.invalidateSnapshots();
         }
 
         void add(A authority) {
+            this.invalidateSnapshots();
+
             if (authority.hasBehavior()) {
                 this.allWithBehavior.add(authority);
             }
 
             ProtectionRuleMap rules = authority.rules();
+            if (!rules.isEmpty()) {
+                this.allWithRules.add(authority);
+            }
             for (ProtectionRule rule : rules.keySet()) {
                 this.getMapForRule(rule).add(authority);
             }
         }
 
         void replace(A from, A to) {
+            this.invalidateSnapshots();
+
             if (from.hasBehavior() && !to.hasBehavior()) {
                 this.allWithBehavior.remove(from);
             } else if (to.hasBehavior() && !from.hasBehavior()) {
@@ -218,6 +287,14 @@ public final class IndexedAuthorityMap<A extends Authority> implements Authority
             Set<ProtectionRule> fromRules = from.rules().keySet();
             Set<ProtectionRule> toRules = to.rules().keySet();
 
+            if (!fromRules.isEmpty() && !toRules.isEmpty()) {
+                this.allWithRules.replace(from, to);
+            } else if (!fromRules.isEmpty()) {
+                this.allWithRules.remove(from.key());
+            } else if (!toRules.isEmpty()) {
+                this.allWithRules.add(to);
+            }
+
             for (ProtectionRule rule : fromRules) {
                 AuthorityMap<A> map = this.getMapForRule(rule);
                 if (toRules.contains(rule)) {
@@ -235,14 +312,24 @@ public final class IndexedAuthorityMap<A extends Authority> implements Authority
         }
 
         void remove(String key) {
+            this.invalidateSnapshots();
+
             this.allWithBehavior.remove(key);
-            for (AuthorityMap<A> map : this.byRule.values()) {
-                map.remove(key);
+            this.allWithRules.remove(key);
+            for (AuthorityMap<A> map : this.byRule) {
+                if (map != null) {
+                    map.remove(key);
+                }
             }
         }
 
         private AuthorityMap<A> getMapForRule(ProtectionRule rule) {
-            return this.byRule.computeIfAbsent(rule, r -> new SortedAuthorityHashMap<>());
+            AuthorityMap<A> map = this.byRule[rule.id()];
+            if (map == null) {
+                map = new SortedAuthorityHashMap<>();
+                this.byRule[rule.id()] = map;
+            }
+            return map;
         }
     }
 }
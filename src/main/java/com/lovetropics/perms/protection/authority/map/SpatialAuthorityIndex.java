@@ -0,0 +1,113 @@
+package com.lovetropics.perms.protection.authority.map;
+
+import com.lovetropics.lib.BlockBox;
+import com.lovetropics.perms.protection.authority.Authority;
+import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the authorities with one rule, flattened into arrays in priority order so that they can be
+ * tested with a plain indexed loop. Within a dimension, the authorities are also bucketed by the chunk columns that
+ * their bounds cover, so that only the authorities that may contain a position need to be tested. Authorities too
+ * large to bucket are included in every bucket.
+ * <p>
+ * Snapshots are rebuilt whenever the authorities they were built from change.
+ */
+final class SpatialAuthorityIndex {
+    static final Authority[] EMPTY = new Authority[0];
+
+    private static final long MAX_BUCKETED_CHUNKS = 64 * 64;
+
+    private final Authority[] all;
+    private final Authority[] unbucketed;
+    private final Long2ObjectMap<Authority[]> byChunk;
+
+    private SpatialAuthorityIndex(Authority[] all, Authority[] unbucketed, Long2ObjectMap<Authority[]> byChunk) {
+        this.all = all;
+        this.unbucketed = unbucketed;
+        this.byChunk = byChunk;
+    }
+
+    /**
+     * @param dimension the dimension to bucket the authorities in, or {@code null} to leave every authority unbucketed
+     */
+    static SpatialAuthorityIndex build(@Nullable ResourceKey<Level> dimension, Iterable<? extends Authority> authorities) {
+        List<Authority> all = new ArrayList<>();
+        List<Authority> unbucketed = new ArrayList<>();
+        Long2ObjectMap<List<Authority>> byChunk = new Long2ObjectOpenHashMap<>();
+
+        for (Authority authority : authorities) {
+            all.add(authority);
+
+            BlockBox bounds = dimension != null ? authority.getBounds(dimension) : AuthorityShape.UNBOUNDED;
+            if (bounds == null) {
+                continue;
+            }
+
+            int minX = SectionPos.blockToSectionCoord(bounds.min().getX());
+            int minZ = SectionPos.blockToSectionCoord(bounds.min().getZ());
+            int maxX = SectionPos.blockToSectionCoord(bounds.max().getX());
+            int maxZ = SectionPos.blockToSectionCoord(bounds.max().getZ());
+            if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > MAX_BUCKETED_CHUNKS) {
+                unbucketed.add(authority);
+                continue;
+            }
+
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    byChunk.computeIfAbsent(ChunkPos.asLong(x, z), key -> new ArrayList<>()).add(authority);
+                }
+            }
+        }
+
+        Long2ObjectMap<Authority[]> byChunkArrays = new Long2ObjectOpenHashMap<>(byChunk.size());
+        for (Long2ObjectMap.Entry<List<Authority>> entry : byChunk.long2ObjectEntrySet()) {
+            byChunkArrays.put(entry.getLongKey(), merge(entry.getValue(), unbucketed));
+        }
+
+        return new SpatialAuthorityIndex(all.toArray(EMPTY), unbucketed.toArray(EMPTY), byChunkArrays);
+    }
+
+    private static Authority[] merge(List<Authority> left, List<Authority> right) {
+        Authority[] result = new Authority[left.size() + right.size()];
+        int leftIndex = 0;
+        int rightIndex = 0;
+        int index = 0;
+        while (leftIndex < left.size() && rightIndex < right.size()) {
+            if (left.get(leftIndex).compareTo(right.get(rightIndex)) <= 0) {
+                result[index++] = left.get(leftIndex++);
+            } else {
+                result[index++] = right.get(rightIndex++);
+            }
+        }
+        while (leftIndex < left.size()) {
+            result[index++] = left.get(leftIndex++);
+        }
+        while (rightIndex < right.size()) {
+            result[index++] = right.get(rightIndex++);
+        }
+        return result;
+    }
+
+    /**
+     * @param pos the position to select for, or {@code null} to select every authority
+     * @return the authorities that may contain the given position, in priority order. The array must not be modified.
+     */
+    Authority[] select(@Nullable BlockPos pos) {
+        if (pos == null) {
+            return this.all;
+        }
+        long chunk = ChunkPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ()));
+        return this.byChunk.getOrDefault(chunk, this.unbucketed);
+    }
+}
@@ -1,12 +1,16 @@
 package com.lovetropics.perms.protection.authority.shape;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.lib.codec.CodecRegistry;
 import com.lovetropics.perms.protection.EventFilter;
 import com.lovetropics.perms.protection.EventSource;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.MapCodec;
 import com.sk89q.worldedit.regions.Region;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
 import java.util.function.Function;
@@ -16,6 +20,11 @@ public interface AuthorityShape extends EventFilter {
 
     Codec<AuthorityShape> CODEC = REGISTRY.dispatchStable(AuthorityShape::getCodec, Function.identity());
 
+    BlockBox UNBOUNDED = BlockBox.of(
+            new BlockPos(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE),
+            new BlockPos(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)
+    );
+
     static void register() {
         register("universe", UniverseShape.CODEC);
         register("dimension", DimensionShape.CODEC);
@@ -33,6 +42,37 @@ public interface AuthorityShape extends EventFilter {
     @Override
     boolean accepts(EventSource source);
 
+    /**
+     * @return a box containing every position in the given dimension that this shape accepts, {@link #UNBOUNDED} if
+     * that is not known, or {@code null} if the shape accepts nothing in the dimension
+     */
+    @Nullable
+    default BlockBox getBounds(ResourceKey<Level> dimension) {
+        return UNBOUNDED;
+    }
+
+    /**
+     * @return {@code true} if this shape is known to accept every position of the given box in the given dimension,
+     * or {@code false} if it may not
+     */
+    default boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return false;
+    }
+
+    /**
+     * @return whether the given box spans every position, such as {@link #UNBOUNDED} or a union of it with another box
+     */
+    static boolean isUnbounded(BlockBox box) {
+        return box.min().equals(UNBOUNDED.min()) && box.max().equals(UNBOUNDED.max());
+    }
+
+    @Nullable
+    static BlockBox union(@Nullable BlockBox left, @Nullable BlockBox right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        return BlockBox.of(BlockPos.min(left.min(), right.min()), BlockPos.max(left.max(), right.max()));
+    }
+
     @Nullable
     default Region tryIntoRegion(MinecraftServer server) {
         return null;
@@ -28,6 +28,17 @@ public record BoxShape(ResourceKey<Level> dimension, BlockBox box) implements Au
         return (dimension == null || dimension == this.dimension) && (pos == null || this.box.contains(pos));
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return dimension == this.dimension ? this.box : null;
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return dimension == this.dimension && this.box.contains(box.min()) && this.box.contains(box.max());
+    }
+
     @Override
     public MapCodec<BoxShape> getCodec() {
         return CODEC;
@@ -17,6 +17,8 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 
+import javax.annotation.Nullable;
+
 public final class CylinderShape implements AuthorityShape {
     public static final MapCodec<CylinderShape> CODEC = RecordCodecBuilder.mapCodec(i -> i.group(
             Level.RESOURCE_KEY_CODEC.fieldOf("dimension").forGetter(c -> c.dimension),
@@ -62,18 +64,41 @@ public final class CylinderShape implements AuthorityShape {
         if (pos == null) return true;
 
         if (this.bounds.contains(pos)) {
-            float dx = (float) (pos.getX() - this.centerX) / this.radiusX;
-            float dz = (float) (pos.getZ() - this.centerZ) / this.radiusZ;
-            return dx * dx + dz * dz <= 1.0F;
+            return this.containsColumn(pos.getX(), pos.getZ());
         } else {
             return false;
         }
     }
 
+    private boolean containsColumn(int x, int z) {
+        float dx = (float) (x - this.centerX) / this.radiusX;
+        float dz = (float) (z - this.centerZ) / this.radiusZ;
+        return dx * dx + dz * dz <= 1.0F;
+    }
+
     private boolean acceptsDimension(ResourceKey<Level> dimension) {
         return dimension == null || dimension == this.dimension;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return dimension == this.dimension ? this.bounds : null;
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        if (dimension != this.dimension || !this.bounds.contains(box.min()) || !this.bounds.contains(box.max())) {
+            return false;
+        }
+
+        // the ellipse is convex, so containing every corner column means containing the whole box
+        BlockPos min = box.min();
+        BlockPos max = box.max();
+        return this.containsColumn(min.getX(), min.getZ()) && this.containsColumn(min.getX(), max.getZ())
+                && this.containsColumn(max.getX(), min.getZ()) && this.containsColumn(max.getX(), max.getZ());
+    }
+
     @Override
     public MapCodec<CylinderShape> getCodec() {
         return CODEC;
@@ -1,11 +1,14 @@
 package com.lovetropics.perms.protection.authority.shape;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.perms.protection.EventSource;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.MapCodec;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.Level;
 
+import javax.annotation.Nullable;
+
 public record DimensionShape(ResourceKey<Level> dimension) implements AuthorityShape {
     public static final MapCodec<DimensionShape> CODEC = Level.RESOURCE_KEY_CODEC.xmap(DimensionShape::new, shape -> shape.dimension).fieldOf("value");
 
@@ -15,6 +18,17 @@ public record DimensionShape(ResourceKey<Level> dimension) implements AuthorityS
         return dimension == null || dimension == this.dimension;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return dimension == this.dimension ? UNBOUNDED : null;
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return dimension == this.dimension;
+    }
+
     @Override
     public MapCodec<DimensionShape> getCodec() {
         return CODEC;
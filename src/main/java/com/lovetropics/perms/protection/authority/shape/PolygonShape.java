@@ -15,6 +15,7 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.server.level.ServerLevel;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -76,6 +77,12 @@ public final class PolygonShape implements AuthorityShape {
         return dimension == null || dimension == this.dimension;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        return dimension == this.dimension ? this.bounds : null;
+    }
+
     @Override
     public MapCodec<PolygonShape> getCodec() {
         return CODEC;
@@ -1,6 +1,7 @@
 package com.lovetropics.perms.protection.authority.shape;
 
 import com.google.common.collect.Lists;
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.perms.protection.EventSource;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.serialization.Codec;
@@ -16,6 +17,8 @@ import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.regions.TransformRegion;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
 import java.lang.invoke.MethodHandle;
@@ -96,6 +99,67 @@ public final class TransformedShape implements AuthorityShape {
         return this.shape.accepts(EventSource.transform(source, this.inverseTransform));
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        BlockBox bounds = this.shape.getBounds(dimension);
+        if (bounds == null || AuthorityShape.isUnbounded(bounds)) {
+            return bounds;
+        }
+        if (!isAffine(this.transform)) {
+            // we can not tell where any other transform moves the shape to
+            return UNBOUNDED;
+        }
+
+        // positions are tested by the block corner that they transform back to, so take the corners of every block.
+        // a bound may still sit at the edge of the integer range on some axes, so none of this is done with ints
+        double minCornerX = bounds.min().getX(), minCornerY = bounds.min().getY(), minCornerZ = bounds.min().getZ();
+        double maxCornerX = bounds.max().getX() + 1.0, maxCornerY = bounds.max().getY() + 1.0, maxCornerZ = bounds.max().getZ() + 1.0;
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            Vector3 vector = this.transform.apply(Vector3.at(
+                    (corner & 1) == 0 ? minCornerX : maxCornerX,
+                    (corner & 2) == 0 ? minCornerY : maxCornerY,
+                    (corner & 4) == 0 ? minCornerZ : maxCornerZ
+            ));
+            minX = Math.min(minX, vector.getX());
+            minY = Math.min(minY, vector.getY());
+            minZ = Math.min(minZ, vector.getZ());
+            maxX = Math.max(maxX, vector.getX());
+            maxY = Math.max(maxY, vector.getY());
+            maxZ = Math.max(maxZ, vector.getZ());
+        }
+
+        return BlockBox.of(
+                new BlockPos(floorOutward(minX), floorOutward(minY), floorOutward(minZ)),
+                new BlockPos(ceilOutward(maxX), ceilOutward(maxY), ceilOutward(maxZ))
+        );
+    }
+
+    private static int floorOutward(double value) {
+        return (int) Math.clamp(Math.floor(value) - 1.0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static int ceilOutward(double value) {
+        return (int) Math.clamp(Math.ceil(value) + 1.0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static boolean isAffine(Transform transform) {
+        if (transform instanceof AffineTransform) {
+            return true;
+        } else if (transform instanceof CombinedTransform combinedTransform) {
+            for (Transform child : TransformListGetter.apply(combinedTransform)) {
+                if (!isAffine(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public MapCodec<TransformedShape> getCodec() {
         return CODEC;
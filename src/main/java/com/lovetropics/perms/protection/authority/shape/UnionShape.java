@@ -1,5 +1,6 @@
 package com.lovetropics.perms.protection.authority.shape;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.lib.codec.MoreCodecs;
 import com.lovetropics.perms.protection.EventSource;
 import com.mojang.serialization.Codec;
@@ -7,7 +8,9 @@ import com.mojang.serialization.MapCodec;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.regions.RegionIntersection;
 import com.sk89q.worldedit.world.World;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
 import java.lang.invoke.MethodHandle;
@@ -33,6 +36,26 @@ public record UnionShape(AuthorityShape... shapes) implements AuthorityShape {
         return false;
     }
 
+    @Nullable
+    @Override
+    public BlockBox getBounds(ResourceKey<Level> dimension) {
+        BlockBox bounds = null;
+        for (AuthorityShape shape : this.shapes) {
+            bounds = AuthorityShape.union(bounds, shape.getBounds(dimension));
+        }
+        return bounds;
+    }
+
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        for (AuthorityShape shape : this.shapes) {
+            if (shape.containsBox(dimension, box)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public MapCodec<UnionShape> getCodec() {
         return CODEC;
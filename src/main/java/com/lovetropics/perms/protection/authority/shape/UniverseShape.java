@@ -1,7 +1,10 @@
 package com.lovetropics.perms.protection.authority.shape;
 
+import com.lovetropics.lib.BlockBox;
 import com.lovetropics.perms.protection.EventSource;
 import com.mojang.serialization.MapCodec;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
 
 public final class UniverseShape implements AuthorityShape {
     public static final UniverseShape INSTANCE = new UniverseShape();
@@ -16,6 +19,11 @@ public final class UniverseShape implements AuthorityShape {
         return true;
     }
 
+    @Override
+    public boolean containsBox(ResourceKey<Level> dimension, BlockBox box) {
+        return true;
+    }
+
     @Override
     public MapCodec<UniverseShape> getCodec() {
         return CODEC;
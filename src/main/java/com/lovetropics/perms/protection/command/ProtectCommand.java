@@ -4,6 +4,7 @@ import com.lovetropics.lib.permission.PermissionResult;
 import com.lovetropics.lib.permission.role.Role;
 import com.lovetropics.perms.protection.ProtectionManager;
 import com.lovetropics.perms.protection.ProtectionRule;
+import com.lovetropics.perms.protection.ProtectionSectionCache;
 import com.lovetropics.perms.protection.authority.Authority;
 import com.lovetropics.perms.protection.authority.UserAuthority;
 import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
@@ -41,6 +42,7 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
 
 import java.util.Collection;
+import java.util.Locale;
 import java.util.function.UnaryOperator;
 
 import static net.minecraft.commands.Commands.argument;
@@ -149,10 +151,18 @@ public final class ProtectCommand {
                         .executes(ProtectCommand::removeBehavior)
                     )))
                 )
+                .then(literal("cache").executes(ProtectCommand::showCacheStats))
         );
         // @formatter:on
     }
 
+    private static int showCacheStats(CommandContext<CommandSourceStack> context) {
+        ProtectionSectionCache.Stats stats = protection(context).sectionCacheStats();
+        String hitRate = String.format(Locale.ROOT, "%.1f%%", stats.hitRate() * 100.0);
+        context.getSource().sendSuccess(() -> Component.translatable("Protection section cache holds %s sections, with %s hits and %s misses (%s hit rate)", stats.size(), stats.hits(), stats.misses(), hitRate), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int addAuthority(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
         String key = StringArgumentType.getString(context, "authority");
         int level = IntegerArgumentType.getInteger(context, "level");
@@ -0,0 +1,64 @@
+package com.lovetropics.perms.role;
+
+import com.lovetropics.lib.permission.PermissionsApi;
+import com.lovetropics.lib.permission.role.Role;
+import com.lovetropics.perms.config.RolesConfig;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import javax.annotation.Nullable;
+import java.util.function.Predicate;
+
+/**
+ * Predicate for the {@code role} entity selector option. The role name is resolved once, and again only after the
+ * roles config has been reloaded, since parsed selectors can be held onto by functions. The everyone role is not
+ * treated as held by anybody, as the selector only ever matched roles that are listed for a player.
+ */
+public final class RoleSelectorPredicate implements Predicate<Entity> {
+    private final String name;
+    private final boolean inverted;
+
+    private volatile Resolved resolved;
+
+    public RoleSelectorPredicate(String name, boolean inverted) {
+        this.name = name;
+        this.inverted = inverted;
+        this.resolved = this.resolve(RolesConfig.get());
+    }
+
+    @Override
+    public boolean test(Entity entity) {
+        if (!(entity instanceof ServerPlayer player)) {
+            return this.inverted;
+        }
+
+        Role role = this.getRole();
+        if (role == null) {
+            return this.inverted;
+        }
+
+        return PermissionsApi.lookup().byPlayer(player).has(role) != this.inverted;
+    }
+
+    @Nullable
+    private Role getRole() {
+        Resolved resolved = this.resolved;
+        RolesConfig config = RolesConfig.get();
+        if (resolved.config != config) {
+            this.resolved = resolved = this.resolve(config);
+        }
+        return resolved.role;
+    }
+
+    private Resolved resolve(RolesConfig config) {
+        Role role = config.get(this.name);
+        // players are never listed as having the everyone role, so it has never matched anybody
+        if (role == config.everyone()) {
+            role = null;
+        }
+        return new Resolved(config, role);
+    }
+
+    private record Resolved(RolesConfig config, @Nullable Role role) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.lovetropics.perms.store;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Size-bounded cache of the role sets of offline players, evicting the least recently used player. Entries must be
+ * invalidated whenever the stored roles of a player change through anything other than the cached set, and the whole
+ * cache cleared when roles are reloaded.
+ */
+public final class OfflineRoleCache {
+    private final int capacity;
+    private final Object2ObjectLinkedOpenHashMap<UUID, PlayerRoleSet> roles = new Object2ObjectLinkedOpenHashMap<>();
+
+    private long hits;
+    private long misses;
+
+    OfflineRoleCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Nullable
+    synchronized PlayerRoleSet get(UUID uuid) {
+        PlayerRoleSet roles = this.roles.getAndMoveToFirst(uuid);
+        if (roles != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+        return roles;
+    }
+
+    synchronized void put(UUID uuid, PlayerRoleSet roles) {
+        this.roles.putAndMoveToFirst(uuid, roles);
+        if (this.roles.size() > this.capacity) {
+            this.roles.removeLast();
+        }
+    }
+
+    synchronized void invalidate(UUID uuid) {
+        this.roles.remove(uuid);
+    }
+
+    synchronized void invalidateAll(Collection<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            this.roles.remove(uuid);
+        }
+    }
+
+    synchronized void clear() {
+        this.roles.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(this.roles.size(), this.hits, this.misses);
+    }
+
+    public record Stats(int size, long hits, long misses) {
+        public double hitRate() {
+            long total = this.hits + this.misses;
+            return total > 0 ? (double) this.hits / total : 0.0;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.lovetropics.perms.store;
 
+import com.lovetropics.lib.permission.role.Role;
 import com.lovetropics.lib.permission.role.RoleReader;
 import com.lovetropics.perms.LTPermissions;
 import com.lovetropics.perms.config.RolesConfig;
+import com.lovetropics.perms.config.StorageConfig;
+import com.lovetropics.perms.override.RoleOverrideMap;
 import com.lovetropics.perms.store.db.PlayerRoleDatabase;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import com.mojang.authlib.GameProfile;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.Util;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.level.storage.LevelResource;
@@ -16,20 +21,34 @@ import net.neoforged.neoforge.event.server.ServerStoppedEvent;
 import org.apache.commons.io.IOUtils;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @EventBusSubscriber(modid = LTPermissions.ID)
 public final class PlayerRoleManager {
-    private static PlayerRoleManager instance;
+    private static final int OFFLINE_CACHE_SIZE = 512;
+
+    private static volatile PlayerRoleManager instance;
 
     private final PlayerRoleDatabase database;
 
-    private final Map<UUID, PlayerRoleSet> onlinePlayerRoles = new Object2ObjectOpenHashMap<>();
+    // only changed from the server thread, but read by permission checks from any thread
+    private final Map<UUID, PlayerRoleSet> onlinePlayerRoles = new ConcurrentHashMap<>();
+    private final OfflineRoleCache offlinePlayerRoles = new OfflineRoleCache(OFFLINE_CACHE_SIZE);
 
     private PlayerRoleManager(PlayerRoleDatabase database) {
         this.database = database;
@@ -49,6 +68,16 @@ public final class PlayerRoleManager {
         }
     }
 
+    /**
+     * Called once a connecting player has been authenticated, possibly off of the server thread.
+     */
+    public static void onLoginVerified(GameProfile profile) {
+        PlayerRoleManager instance = PlayerRoleManager.instance;
+        if (instance != null && profile.getId() != null) {
+            instance.database.prefetch(profile.getId());
+        }
+    }
+
     @SubscribeEvent
     public static void onPlayerLoggedIn(PlayerEvent.LoadFromFile event) {
         PlayerRoleManager instance = PlayerRoleManager.instance;
@@ -68,7 +97,7 @@ public final class PlayerRoleManager {
     private static PlayerRoleManager open(MinecraftServer server) {
         try {
             Path path = server.getWorldPath(LevelResource.PLAYER_DATA_DIR).resolve("player_roles");
-            PlayerRoleDatabase database = PlayerRoleDatabase.open(path);
+            PlayerRoleDatabase database = PlayerRoleDatabase.open(path, StorageConfig.shardCount(), StorageConfig.databaseOptions());
             return new PlayerRoleManager(database);
         } catch (IOException e) {
             throw new RuntimeException("failed to open player roles database");
@@ -81,6 +110,7 @@ public final class PlayerRoleManager {
 
     public void onPlayerJoin(ServerPlayer player) {
         if (!this.onlinePlayerRoles.containsKey(player.getUUID())) {
+            this.offlinePlayerRoles.invalidate(player.getUUID());
             RolesConfig config = RolesConfig.get();
             PlayerRoleSet roles = this.loadPlayerRoles(player, config);
             this.database.tryLoadInto(player.getUUID(), roles);
@@ -93,29 +123,55 @@ public final class PlayerRoleManager {
             this.database.trySave(player.getUUID(), roles);
             roles.setDirty(false);
         }
+        this.offlinePlayerRoles.invalidate(player.getUUID());
     }
 
+    /**
+     * Moves the roles of every online player over to the given config. The new role sets and their overrides are
+     * built in parallel, and only then published together, with only players whose overrides changed being notified.
+     */
     public void onRoleReload(MinecraftServer server, RolesConfig config) {
-        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-            this.loadPlayerRoles(player, config);
-        }
-    }
+        this.offlinePlayerRoles.clear();
 
-    private PlayerRoleSet loadPlayerRoles(ServerPlayer player, RolesConfig config) {
-        PlayerRoleSet oldRoles = this.onlinePlayerRoles.get(player.getUUID());
+        List<ServerPlayer> players = List.copyOf(server.getPlayerList().getPlayers());
+        List<PlayerRoleSet> oldRoles = players.stream()
+                .map(player -> this.onlinePlayerRoles.get(player.getUUID()))
+                .toList();
 
-        PlayerRoleSet newRoles = new PlayerRoleSet(config.everyone(), player);
-        if (oldRoles != null) {
-            newRoles.reloadFrom(config, oldRoles);
+        // role ids only need to be looked up once for each config that the old sets were created for
+        Map<RolesConfig, int[]> remappings = new Reference2ObjectOpenHashMap<>();
+        for (PlayerRoleSet roles : oldRoles) {
+            if (roles != null) {
+                remappings.computeIfAbsent(roles.config(), config::remapIndicesFrom);
+            }
         }
 
-        this.onlinePlayerRoles.put(player.getUUID(), newRoles);
+        // nothing changes the old sets while we wait here on the server thread
+        List<PlayerRoleSet> newRoles = oldRoles.parallelStream()
+                .map(roles -> roles != null ? roles.reloadInto(config, remappings.get(roles.config())) : null)
+                .toList();
 
-        if (oldRoles != null) {
-            newRoles.rebuildOverridesAndNotify();
+        for (int i = 0; i < players.size(); i++) {
+            PlayerRoleSet roles = newRoles.get(i);
+            if (roles != null) {
+                this.onlinePlayerRoles.put(players.get(i).getUUID(), roles);
+            }
         }
 
-        return newRoles;
+        for (int i = 0; i < players.size(); i++) {
+            PlayerRoleSet roles = newRoles.get(i);
+            if (roles != null) {
+                roles.notifyChangeFrom(oldRoles.get(i).overrides());
+            } else {
+                this.loadPlayerRoles(players.get(i), config);
+            }
+        }
+    }
+
+    private PlayerRoleSet loadPlayerRoles(ServerPlayer player, RolesConfig config) {
+        PlayerRoleSet roles = new PlayerRoleSet(config, player);
+        this.onlinePlayerRoles.put(player.getUUID(), roles);
+        return roles;
     }
 
     private void close(MinecraftServer server) {
@@ -128,37 +184,166 @@ public final class PlayerRoleManager {
         }
     }
 
-    public <R> R updateRoles(UUID uuid, Function<PlayerRoleSet, R> update) {
-        PlayerRoleSet roles = this.onlinePlayerRoles.get(uuid);
-        if (roles != null) {
-            return update.apply(roles);
-        } else {
-            roles = this.loadOfflinePlayerRoles(uuid);
+    /**
+     * Applies one role change to many players. Online players are updated right away, while offline players have
+     * their stored roles read, changed and written back as a single batch off of the server thread, without building
+     * a {@link PlayerRoleSet} for each of them.
+     *
+     * @return the number of players whose roles were changed, completed on the server thread
+     */
+    public CompletableFuture<Integer> updateRoles(MinecraftServer server, Collection<UUID> uuids, Role role, RoleOperation operation) {
+        int onlineCount = 0;
+        List<UUID> offline = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            PlayerRoleSet roles = this.onlinePlayerRoles.get(uuid);
+            if (roles != null) {
+                if (operation.apply(roles, role)) {
+                    onlineCount++;
+                }
+            } else {
+                offline.add(uuid);
+            }
+        }
+
+        if (offline.isEmpty()) {
+            return CompletableFuture.completedFuture(onlineCount);
+        }
 
+        int finalOnlineCount = onlineCount;
+        return CompletableFuture.supplyAsync(() -> {
             try {
-                return update.apply(roles);
-            } finally {
-                if (roles.isDirty()) {
-                    this.database.trySave(uuid, roles);
+                return this.database.updateAll(offline, roles -> operation.apply(roles, role));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.ioPool()).thenApplyAsync(offlineCount -> {
+            this.offlinePlayerRoles.invalidateAll(offline);
+
+            // players that logged in while we were working may have loaded their roles before our change
+            for (UUID uuid : offline) {
+                PlayerRoleSet roles = this.onlinePlayerRoles.get(uuid);
+                if (roles != null) {
+                    operation.apply(roles, role);
                 }
             }
-        }
+            return finalOnlineCount + offlineCount;
+        }, server);
     }
 
+    /**
+     * @return the roles of the given player, which must not be modified
+     */
     public PlayerRoleSet peekRoles(UUID uuid) {
         PlayerRoleSet roles = this.onlinePlayerRoles.get(uuid);
         return roles != null ? roles : this.loadOfflinePlayerRoles(uuid);
     }
 
-    private PlayerRoleSet loadOfflinePlayerRoles(UUID uuid) {
-        RolesConfig config = RolesConfig.get();
+    /**
+     * @return every player that has the given role, whether they are online or not
+     */
+    public Set<UUID> getPlayersWithRole(Role role) {
+        Set<UUID> players = this.database.getMembers(role.id());
 
-        PlayerRoleSet roles = new PlayerRoleSet(config.everyone(), null);
-        this.database.tryLoadInto(uuid, roles);
+        // the roles of online players are only saved once they leave, so theirs take precedence
+        for (Map.Entry<UUID, PlayerRoleSet> entry : this.onlinePlayerRoles.entrySet()) {
+            if (entry.getValue().has(role)) {
+                players.add(entry.getKey());
+            } else {
+                players.remove(entry.getKey());
+            }
+        }
 
+        return players;
+    }
+
+    private PlayerRoleSet loadOfflinePlayerRoles(UUID uuid) {
+        PlayerRoleSet roles = this.offlinePlayerRoles.get(uuid);
+        if (roles == null) {
+            RolesConfig config = RolesConfig.get();
+
+            roles = new PlayerRoleSet(config, null);
+            this.database.tryLoadInto(uuid, roles);
+            this.offlinePlayerRoles.put(uuid, roles);
+        }
         return roles;
     }
 
+    public OfflineRoleCache.Stats offlineCacheStats() {
+        return this.offlinePlayerRoles.stats();
+    }
+
+    /**
+     * Exports the roles of every player to the given file off of the server thread. See {@link PlayerRoleDatabase#exportTo}.
+     *
+     * @return the number of players exported
+     */
+    public CompletableFuture<Integer> exportRoles(MinecraftServer server, Path path) {
+        this.saveOnlinePlayers(server);
+
+        return CompletableFuture.supplyAsync(() -> {
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                int count;
+                try (Writer writer = Files.newBufferedWriter(tempPath)) {
+                    count = this.database.exportTo(writer);
+                }
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.ioPool());
+    }
+
+    /**
+     * Imports roles from the given file off of the server thread, replacing the roles of every player listed. Online
+     * players are reloaded once the import is done. See {@link PlayerRoleDatabase#importFrom}.
+     *
+     * @return the number of players imported
+     */
+    public CompletableFuture<Integer> importRoles(MinecraftServer server, Path path) {
+        this.saveOnlinePlayers(server);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                return this.database.importFrom(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.ioPool()).thenApplyAsync(count -> {
+            this.offlinePlayerRoles.clear();
+            this.reloadOnlinePlayers(server);
+            return count;
+        }, server);
+    }
+
+    private void saveOnlinePlayers(MinecraftServer server) {
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            PlayerRoleSet roles = this.onlinePlayerRoles.get(player.getUUID());
+            if (roles != null && roles.isDirty()) {
+                this.database.trySave(player.getUUID(), roles);
+                roles.setDirty(false);
+            }
+        }
+    }
+
+    private void reloadOnlinePlayers(MinecraftServer server) {
+        RolesConfig config = RolesConfig.get();
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            PlayerRoleSet roles = this.onlinePlayerRoles.get(player.getUUID());
+            if (roles != null) {
+                PlayerRoleSet storedRoles = new PlayerRoleSet(config, null);
+                this.database.tryLoadInto(player.getUUID(), storedRoles);
+                RoleOverrideMap previousOverrides = roles.overrides();
+                roles.copyFrom(storedRoles);
+                roles.notifyChangeFrom(previousOverrides);
+            }
+        }
+    }
+
+    /**
+     * May be called from any thread, and never blocks.
+     */
     @Nullable
     public RoleReader getRolesForOnline(ServerPlayer player) {
         return this.onlinePlayerRoles.get(player.getUUID());
@@ -1,37 +1,58 @@
 package com.lovetropics.perms.store;
 
 import com.lovetropics.lib.permission.role.Role;
-import com.lovetropics.lib.permission.role.RoleOverrideReader;
-import com.lovetropics.lib.permission.role.RoleProvider;
+import com.lovetropics.lib.permission.role.RoleOverrideType;
 import com.lovetropics.lib.permission.role.RoleReader;
 import com.lovetropics.perms.LTPermissions;
+import com.lovetropics.perms.config.RolesConfig;
+import com.lovetropics.perms.override.RoleOverrideCache;
 import com.lovetropics.perms.override.RoleOverrideMap;
-import it.unimi.dsi.fastutil.objects.ObjectAVLTreeSet;
-import it.unimi.dsi.fastutil.objects.ObjectSortedSet;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
 
 import javax.annotation.Nullable;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.stream.Stream;
 
+/**
+ * The roles held by a player, stored as a bitset over the role indices of the {@link RolesConfig} that the set was
+ * created for. Roles from any other config are never contained, so sets must be moved over with
+ * {@link #reloadFrom(PlayerRoleSet)} when the config is reloaded. Combined overrides are shared with every other set
+ * holding the same roles through the config's {@link RoleOverrideCache}.
+ * <p>
+ * Roles must only be changed from one thread at a time, normally the server thread, but may be read from any thread.
+ */
 public final class PlayerRoleSet implements RoleReader {
-    private final Role everyoneRole;
+    private final RolesConfig config;
 
     @Nullable
     private final ServerPlayer player;
 
-    private final ObjectSortedSet<Role> roles = new ObjectAVLTreeSet<>();
-    private RoleOverrideMap overrides = RoleOverrideMap.EMPTY;
+    // never modified once assigned, so that they can be read from any thread while the server thread changes roles
+    private volatile long[] roles;
+    private volatile RoleOverrideMap overrides = RoleOverrideMap.EMPTY;
 
     private boolean dirty;
 
-    public PlayerRoleSet(Role everyoneRole, @Nullable ServerPlayer player) {
-        this.everyoneRole = everyoneRole;
+    public PlayerRoleSet(RolesConfig config, @Nullable ServerPlayer player) {
+        this(config, player, true);
+    }
+
+    /**
+     * @param initialize whether to build the overrides and notify the player. Otherwise, the overrides are left empty
+     *                   for the caller to build once the roles have been filled in
+     */
+    private PlayerRoleSet(RolesConfig config, @Nullable ServerPlayer player, boolean initialize) {
+        this.config = config;
         this.player = player;
+        this.roles = new long[(config.indexCount() + Long.SIZE - 1) / Long.SIZE];
 
-        this.rebuildOverridesAndInitialize();
+        if (initialize) {
+            this.rebuildOverridesAndInitialize();
+        }
     }
 
     public void rebuildOverridesAndInitialize() {
@@ -49,15 +70,58 @@ public final class PlayerRoleSet implements RoleReader {
     }
 
     private void rebuildOverrides() {
-        RoleOverrideMap.Builder builder = RoleOverrideMap.builder();
-        stream().forEach(role -> builder.addAll(role.overrides()));
-        overrides = builder.build();
+        RoleOverrideCache cache = this.config.overrideCache();
+        RoleOverrideMap overrides = cache.get(this.roles);
+        if (overrides == null) {
+            RoleOverrideMap.Builder builder = RoleOverrideMap.builder();
+            for (Role role : this) {
+                builder.addAll(role.overrides());
+            }
+            builder.addAll(this.config.everyone().overrides());
+            overrides = cache.intern(this.roles, builder.build());
+        }
+        this.overrides = overrides;
+    }
+
+    /**
+     * Combines the overrides of only the given types again, after a role that touches them was added or removed, and
+     * notifies the types whose combined value changed.
+     */
+    private void updateOverrides(Set<RoleOverrideType<?>> types) {
+        RoleOverrideMap previous = this.overrides;
+
+        RoleOverrideCache cache = this.config.overrideCache();
+        RoleOverrideMap overrides = cache.get(this.roles);
+        if (overrides == null) {
+            RoleOverrideMap.Builder builder = RoleOverrideMap.builder();
+            for (Role role : this) {
+                builder.addAll(role.overrides(), types);
+            }
+            builder.addAll(this.config.everyone().overrides(), types);
+            overrides = cache.intern(this.roles, previous.rebuild(types, builder));
+        }
+
+        this.overrides = overrides;
+        if (this.player != null) {
+            this.overrides.notifyChange(this.player, previous);
+        }
+    }
+
+    /**
+     * Notifies the player of every override type whose combined value differs from the given overrides, such as after
+     * {@link #copyFrom(PlayerRoleSet)}.
+     */
+    public void notifyChangeFrom(RoleOverrideMap previous) {
+        if (this.player != null) {
+            this.overrides.notifyChange(this.player, previous);
+        }
     }
 
     public boolean add(Role role) {
-        if (this.roles.add(role)) {
+        int index = this.config.indexOf(role);
+        if (index > 0 && this.setBit(index)) {
             this.dirty = true;
-            this.rebuildOverridesAndNotify();
+            this.updateOverrides(role.overrides().typeSet());
             return true;
         }
 
@@ -65,61 +129,102 @@ public final class PlayerRoleSet implements RoleReader {
     }
 
     public boolean remove(Role role) {
-        if (this.roles.remove(role)) {
+        int index = this.config.indexOf(role);
+        if (index > 0 && this.clearBit(index)) {
             this.dirty = true;
-            this.rebuildOverridesAndNotify();
+            this.updateOverrides(role.overrides().typeSet());
             return true;
         }
 
         return false;
     }
 
+    private boolean setBit(int index) {
+        long[] roles = this.roles;
+        if (get(roles, index)) {
+            return false;
+        }
+        roles = roles.clone();
+        set(roles, index);
+        this.roles = roles;
+        return true;
+    }
+
+    private boolean clearBit(int index) {
+        long[] roles = this.roles;
+        if (!get(roles, index)) {
+            return false;
+        }
+        roles = roles.clone();
+        roles[index >>> 6] &= ~(1L << index);
+        this.roles = roles;
+        return true;
+    }
+
+    private static void set(long[] roles, int index) {
+        roles[index >>> 6] |= 1L << index;
+    }
+
+    private static boolean get(long[] roles, int index) {
+        return (roles[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Iterates the roles of this set from highest to lowest priority, not including the everyone role.
+     */
     @Override
     public Iterator<Role> iterator() {
-        return this.roles.iterator();
+        return new RoleIterator();
     }
 
     @Override
     public Stream<Role> stream() {
-        return Stream.concat(
-                this.roles.stream(),
-                Stream.of(this.everyoneRole)
-        );
+        Stream.Builder<Role> builder = Stream.builder();
+        for (Role role : this) {
+            builder.add(role);
+        }
+        return builder.add(this.config.everyone()).build();
     }
 
     @Override
     public boolean has(Role role) {
-        return role == this.everyoneRole || this.roles.contains(role);
+        int index = this.config.indexOf(role);
+        // an equal role from another config may share the index, but is not one of ours
+        if (index < 0 || this.config.byIndex(index) != role) {
+            return false;
+        }
+        return index == 0 || get(this.roles, index);
     }
 
     @Override
-    public RoleOverrideReader overrides() {
+    public RoleOverrideMap overrides() {
         return this.overrides;
     }
 
     public ListTag serialize() {
         ListTag list = new ListTag();
-        for (Role role : this.roles) {
+        for (Role role : this) {
             list.add(StringTag.valueOf(role.id()));
         }
         return list;
     }
 
-    public void deserialize(RoleProvider roleProvider, ListTag list) {
-        this.roles.clear();
+    public void deserialize(ListTag list) {
+        long[] roles = new long[this.roles.length];
 
         for (int i = 0; i < list.size(); i++) {
             String name = list.getString(i);
-            Role role = roleProvider.get(name);
+            Role role = this.config.get(name);
             if (role == null || name.equalsIgnoreCase(Role.EVERYONE)) {
                 this.dirty = true;
                 LTPermissions.LOGGER.warn("Encountered invalid role '{}'", name);
                 continue;
             }
 
-            this.roles.add(role);
+            set(roles, this.config.indexOf(role));
         }
 
+        this.roles = roles;
         this.rebuildOverrides();
     }
 
@@ -132,27 +237,114 @@ public final class PlayerRoleSet implements RoleReader {
     }
 
     public boolean isEmpty() {
-        return this.roles.isEmpty();
+        for (long word : this.roles) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public void reloadFrom(RoleProvider roleProvider, PlayerRoleSet roles) {
-        ListTag nbt = roles.serialize();
-        this.deserialize(roleProvider, nbt);
+    /**
+     * Takes over the roles of a set that was created for an older config, dropping any roles that no longer exist.
+     */
+    public void reloadFrom(PlayerRoleSet roles) {
+        this.reloadFrom(roles, this.config.remapIndicesFrom(roles.config));
+    }
 
+    /**
+     * @param remapping the indices in this set's config of the roles in the other set's config, as given by
+     *                  {@link RolesConfig#remapIndicesFrom}
+     */
+    private void reloadFrom(PlayerRoleSet roles, int[] remapping) {
+        long[] oldRoles = roles.roles;
+        long[] newRoles = new long[this.roles.length];
+
+        for (int word = 0; word < oldRoles.length; word++) {
+            long bits = oldRoles[word];
+            while (bits != 0) {
+                int index = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int newIndex = remapping[index];
+                if (newIndex > 0) {
+                    set(newRoles, newIndex);
+                } else {
+                    this.dirty = true;
+                    LTPermissions.LOGGER.warn("Encountered invalid role '{}'", roles.config.byIndex(index).id());
+                }
+            }
+        }
+
+        this.roles = newRoles;
         this.dirty |= roles.dirty;
+        this.rebuildOverrides();
+    }
+
+    /**
+     * Creates a set for the given config holding the roles of this set that still exist, without notifying the player.
+     * This set is left unchanged, so this can be called from any thread as long as nothing changes this set meanwhile.
+     *
+     * @param remapping the result of {@link RolesConfig#remapIndicesFrom} from this set's config to the given config
+     */
+    public PlayerRoleSet reloadInto(RolesConfig config, int[] remapping) {
+        // reloadFrom builds the overrides, so they are only built once for the remapped roles
+        PlayerRoleSet roles = new PlayerRoleSet(config, this.player, false);
+        roles.reloadFrom(this, remapping);
+        return roles;
+    }
+
+    public RolesConfig config() {
+        return this.config;
     }
 
     public void copyFrom(PlayerRoleSet roles) {
-        this.roles.clear();
-        this.roles.addAll(roles.roles);
+        if (roles.config != this.config) {
+            this.dirty = false;
+            this.reloadFrom(roles);
+            return;
+        }
+
+        this.roles = roles.roles;
         this.dirty = roles.dirty;
 
         this.rebuildOverrides();
     }
 
     public PlayerRoleSet copy() {
-        PlayerRoleSet copy = new PlayerRoleSet(this.everyoneRole, this.player);
+        PlayerRoleSet copy = new PlayerRoleSet(this.config, this.player);
         copy.copyFrom(this);
         return copy;
     }
+
+    private final class RoleIterator implements Iterator<Role> {
+        private final long[] roles = PlayerRoleSet.this.roles;
+        private int rank = -1;
+
+        private RoleIterator() {
+            this.advance();
+        }
+
+        private void advance() {
+            RolesConfig config = PlayerRoleSet.this.config;
+            do {
+                this.rank++;
+            } while (this.rank < config.size() && !get(this.roles, config.indexOf(config.byPriority(this.rank))));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.rank < PlayerRoleSet.this.config.size();
+        }
+
+        @Override
+        public Role next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Role role = PlayerRoleSet.this.config.byPriority(this.rank);
+            this.advance();
+            return role;
+        }
+    }
 }
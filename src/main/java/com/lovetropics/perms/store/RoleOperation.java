@@ -0,0 +1,71 @@
+package com.lovetropics.perms.store;
+
+import com.lovetropics.lib.permission.role.Role;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+
+import javax.annotation.Nullable;
+
+/**
+ * A change to a single role that can be applied either to a loaded {@link PlayerRoleSet}, or directly to the role ids
+ * stored for an offline player.
+ */
+public enum RoleOperation {
+    ADD {
+        @Override
+        public boolean apply(PlayerRoleSet roles, Role role) {
+            return roles.add(role);
+        }
+
+        @Override
+        @Nullable
+        public ListTag apply(ListTag roles, Role role) {
+            if (indexOf(roles, role) != -1) {
+                return null;
+            }
+            ListTag newRoles = roles.copy();
+            newRoles.add(StringTag.valueOf(role.id()));
+            return newRoles;
+        }
+    },
+    REMOVE {
+        @Override
+        public boolean apply(PlayerRoleSet roles, Role role) {
+            return roles.remove(role);
+        }
+
+        @Override
+        @Nullable
+        public ListTag apply(ListTag roles, Role role) {
+            int index = indexOf(roles, role);
+            if (index == -1) {
+                return null;
+            }
+            ListTag newRoles = roles.copy();
+            newRoles.remove(index);
+            return newRoles;
+        }
+    };
+
+    /**
+     * @return whether the roles were changed
+     */
+    public abstract boolean apply(PlayerRoleSet roles, Role role);
+
+    /**
+     * @return the changed role ids, or {@code null} if they are left unchanged. The given role ids are not modified
+     */
+    @Nullable
+    public abstract ListTag apply(ListTag roles, Role role);
+
+    private static int indexOf(ListTag roles, Role role) {
+        for (int i = 0; i < roles.size(); i++) {
+            Tag tag = roles.get(i);
+            if (tag.getAsString().equals(role.id())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
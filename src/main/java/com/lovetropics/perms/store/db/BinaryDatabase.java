@@ -0,0 +1,80 @@
+package com.lovetropics.perms.store.db;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistent map from UUID to binary values.
+ *
+ * @see Uuid2BinaryDatabase
+ * @see ShardedUuid2BinaryDatabase
+ */
+public interface BinaryDatabase extends Closeable {
+    /**
+     * @return the value stored for the given key, positioned at its start. This may be a read-only view
+     */
+    @Nullable
+    ByteBuffer get(UUID key) throws IOException;
+
+    void put(UUID key, ByteBuffer bytes) throws IOException;
+
+    /**
+     * Stores all the given entries, which may be done more efficiently than storing them one by one.
+     */
+    default void putAll(Map<UUID, ByteBuffer> entries) throws IOException {
+        for (Map.Entry<UUID, ByteBuffer> entry : entries.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    boolean remove(UUID key) throws IOException;
+
+    /**
+     * Opens a cursor over every stored entry, in no particular order. Entries that are written while the cursor is
+     * open may or may not be visited.
+     */
+    Cursor openCursor() throws IOException;
+
+    /**
+     * Opens a cursor over the entries for the given keys, in no particular order. Keys without an entry are skipped.
+     */
+    Cursor openCursor(Collection<UUID> keys) throws IOException;
+
+    /**
+     * @return the files that hold the stored entries, so that snapshots derived from them can tell whether they are
+     * still up to date
+     */
+    Collection<Path> files();
+
+    default void forEach(EntryVisitor visitor) throws IOException {
+        try (Cursor cursor = this.openCursor()) {
+            while (cursor.next()) {
+                visitor.accept(cursor.key(), cursor.value());
+            }
+        }
+    }
+
+    interface Cursor extends Closeable {
+        /**
+         * @return whether the cursor moved to another entry, or {@code false} if there are no more entries
+         */
+        boolean next() throws IOException;
+
+        UUID key();
+
+        /**
+         * @return the value of the current entry, which stays valid after the cursor moves on
+         */
+        ByteBuffer value();
+    }
+
+    interface EntryVisitor {
+        void accept(UUID key, ByteBuffer bytes) throws IOException;
+    }
+}
@@ -0,0 +1,161 @@
+package com.lovetropics.perms.store.db;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Decides which files make up the database at a given path: a single file at the path itself, or a directory of
+ * shards next to it that is named after the shard count.
+ * <p>
+ * If the database is only found in another layout, such as after the shard count was changed, it is migrated on open.
+ * Entries are copied into a temporary location that is only moved into place once complete, so that an interrupted
+ * migration simply starts over.
+ */
+public final class DatabaseLayout {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final String SHARDS_SUFFIX = ".shards-";
+    private static final String MIGRATING_SUFFIX = ".migrating";
+
+    private static final int MIGRATE_BATCH_SIZE = 4096;
+
+    private DatabaseLayout() {
+    }
+
+    public static BinaryDatabase open(Path path, int shardCount, DatabaseOptions options) throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shard count must be positive (" + shardCount + ")");
+        }
+
+        Path target = pathFor(path, shardCount);
+        deleteDatabase(migratingPathFor(target));
+
+        Existing existing = findExisting(path, shardCount);
+        if (existing != null) {
+            if (Files.exists(target)) {
+                LOGGER.warn("Ignoring player role database at {} as the configured one at {} already exists", existing.path(), target);
+            } else {
+                migrate(existing, target, shardCount, options);
+            }
+        }
+
+        return openAt(target, shardCount, options);
+    }
+
+    private static BinaryDatabase openAt(Path path, int shardCount, DatabaseOptions options) throws IOException {
+        if (shardCount == 1) {
+            return Uuid2BinaryDatabase.open(path, options);
+        }
+        return ShardedUuid2BinaryDatabase.open(path, shardCount, options);
+    }
+
+    private static Path pathFor(Path path, int shardCount) {
+        if (shardCount == 1) {
+            return path;
+        }
+        return path.resolveSibling(path.getFileName() + SHARDS_SUFFIX + shardCount);
+    }
+
+    private static Path migratingPathFor(Path target) {
+        return target.resolveSibling(target.getFileName() + MIGRATING_SUFFIX);
+    }
+
+    /**
+     * @return the database at the given path in any layout other than the one with the given shard count
+     */
+    @Nullable
+    private static Existing findExisting(Path path, int shardCount) throws IOException {
+        if (shardCount != 1 && Files.isRegularFile(path)) {
+            return new Existing(path, 1);
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+
+        Pattern pattern = Pattern.compile(Pattern.quote(path.getFileName() + SHARDS_SUFFIX) + "(\\d+)");
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path sibling : siblings) {
+                Matcher matcher = pattern.matcher(sibling.getFileName().toString());
+                if (matcher.matches()) {
+                    int count = Integer.parseInt(matcher.group(1));
+                    if (count != shardCount && count > 1) {
+                        return new Existing(sibling, count);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static void migrate(Existing source, Path target, int shardCount, DatabaseOptions options) throws IOException {
+        LOGGER.info("Migrating player role database from {} to {}", source.path(), target);
+
+        // the result is synced as a whole when closed, before it is moved into place
+        DatabaseOptions migrateOptions = new DatabaseOptions(false, DatabaseOptions.SyncMode.ON_CLOSE, options.syncIntervalMillis());
+
+        Path migratingPath = migratingPathFor(target);
+        int count = 0;
+        try (
+                BinaryDatabase from = openAt(source.path(), source.shardCount(), options);
+                BinaryDatabase to = openAt(migratingPath, shardCount, migrateOptions);
+                BinaryDatabase.Cursor cursor = from.openCursor()
+        ) {
+            Map<UUID, ByteBuffer> batch = new HashMap<>();
+            while (cursor.next()) {
+                batch.put(cursor.key(), cursor.value());
+                if (batch.size() >= MIGRATE_BATCH_SIZE) {
+                    to.putAll(batch);
+                    batch.clear();
+                }
+                count++;
+            }
+            to.putAll(batch);
+        }
+
+        Files.move(migratingPath, target, StandardCopyOption.ATOMIC_MOVE);
+        if (shardCount == 1) {
+            Path migratingIndexPath = PointerIndexFile.pathFor(migratingPath);
+            if (Files.exists(migratingIndexPath)) {
+                Files.move(migratingIndexPath, PointerIndexFile.pathFor(target), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        deleteDatabase(source.path());
+
+        LOGGER.info("Migrated {} entries into player role database at {}", count, target);
+    }
+
+    private static void deleteDatabase(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        } else {
+            Files.deleteIfExists(path);
+            PointerIndexFile.delete(path);
+        }
+    }
+
+    private record Existing(Path path, int shardCount) {
+    }
+}
@@ -0,0 +1,31 @@
+package com.lovetropics.perms.store.db;
+
+/**
+ * @param memoryMapped       whether reads should be served from a memory mapping of the database file
+ * @param syncMode           when writes are synced to disk
+ * @param syncIntervalMillis how often writes are synced with {@link SyncMode#INTERVAL}
+ */
+public record DatabaseOptions(boolean memoryMapped, SyncMode syncMode, long syncIntervalMillis) {
+    public static final DatabaseOptions DEFAULT = new DatabaseOptions(false, SyncMode.INTERVAL, 1000);
+
+    public DatabaseOptions {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("sync interval must be positive (" + syncIntervalMillis + ")");
+        }
+    }
+
+    public enum SyncMode {
+        /**
+         * Sync after every write. Nothing that was written is ever lost, but each write waits on the disk.
+         */
+        EVERY_WRITE,
+        /**
+         * Sync all writes made since the last sync on a fixed interval. At most one interval of writes can be lost.
+         */
+        INTERVAL,
+        /**
+         * Only sync when the database is closed, leaving it up to the operating system otherwise.
+         */
+        ON_CLOSE,
+    }
+}
@@ -0,0 +1,84 @@
+package com.lovetropics.perms.store.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only memory mapping of a file that can only grow. The file is mapped in fixed-size segments which each overlap
+ * into the next segment by the largest span that will ever be read, so that any read can be served by a single
+ * segment. Segments are remapped lazily once a read reaches past the end of what was mapped.
+ * <p>
+ * Mappings are never unmapped explicitly, as slices that were handed out may still be read from. A segment that was
+ * remapped, or a whole mapping that was replaced when the file was swapped, is released by the garbage collector once
+ * nothing refers to it any more.
+ */
+final class FileMapping {
+    private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int overlapBytes;
+    private final ByteOrder order;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    FileMapping(FileChannel channel, int overlapBytes, ByteOrder order) {
+        this.channel = channel;
+        this.overlapBytes = overlapBytes;
+        this.order = order;
+    }
+
+    /**
+     * @return a read-only view of the given range of the file, which remains valid even if the file is later replaced
+     */
+    ByteBuffer slice(long position, int length) throws IOException {
+        if (length > this.overlapBytes) {
+            throw new IOException("read of " + length + " bytes is larger than mapping overlap");
+        }
+
+        int index = (int) (position / SEGMENT_BYTES);
+        int offset = (int) (position - (long) index * SEGMENT_BYTES);
+
+        MappedByteBuffer segment = this.getSegment(index, offset + length);
+        return segment.slice(offset, length).order(this.order);
+    }
+
+    private MappedByteBuffer getSegment(int index, int requiredBytes) throws IOException {
+        MappedByteBuffer[] segments = this.segments;
+        if (index < segments.length) {
+            MappedByteBuffer segment = segments[index];
+            if (segment != null && segment.capacity() >= requiredBytes) {
+                return segment;
+            }
+        }
+        return this.remap(index, requiredBytes);
+    }
+
+    private synchronized MappedByteBuffer remap(int index, int requiredBytes) throws IOException {
+        MappedByteBuffer[] segments = this.segments;
+        if (index < segments.length) {
+            MappedByteBuffer segment = segments[index];
+            if (segment != null && segment.capacity() >= requiredBytes) {
+                return segment;
+            }
+        }
+
+        long start = (long) index * SEGMENT_BYTES;
+        long length = Math.min(this.channel.size() - start, (long) SEGMENT_BYTES + this.overlapBytes);
+        if (length < requiredBytes) {
+            throw new IOException("read past end of file (" + (start + requiredBytes) + ">" + this.channel.size() + ")");
+        }
+
+        // the segment that this replaces is left for the garbage collector, see the class documentation
+        MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+        segments = Arrays.copyOf(segments, Math.max(segments.length, index + 1));
+        segments[index] = segment;
+        this.segments = segments;
+
+        return segment;
+    }
+}
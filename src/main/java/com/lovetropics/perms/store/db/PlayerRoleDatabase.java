@@ -1,87 +1,321 @@
 package com.lovetropics.perms.store.db;
 
-import com.lovetropics.perms.config.RolesConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.lovetropics.perms.store.PlayerRoleSet;
 import com.mojang.logging.LogUtils;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtAccounter;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.Tag;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.util.GsonHelper;
 import org.slf4j.Logger;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 public final class PlayerRoleDatabase implements Closeable {
     private static final Logger LOGGER = LogUtils.getLogger();
 
-    private final Uuid2BinaryDatabase binary;
+    private static final long PREFETCH_EXPIRY_MS = 60 * 1000;
 
-    private PlayerRoleDatabase(Uuid2BinaryDatabase binary) {
+    private static final int IMPORT_BATCH_SIZE = 8192;
+
+    private static final Gson GSON = new Gson();
+
+    private final BinaryDatabase binary;
+    private final RoleSetCodec codec;
+    private final RoleMemberIndex memberIndex;
+    private final PlayerRoleWriteQueue writeQueue;
+
+    private final Map<UUID, Prefetch> prefetches = new ConcurrentHashMap<>();
+
+    private PlayerRoleDatabase(BinaryDatabase binary, RoleSetCodec codec, RoleMemberIndex memberIndex) {
         this.binary = binary;
+        this.codec = codec;
+        this.memberIndex = memberIndex;
+        this.writeQueue = new PlayerRoleWriteQueue(this::write, memberIndex::update);
+    }
+
+    public static PlayerRoleDatabase open(Path path, int shardCount, DatabaseOptions options) throws IOException {
+        BinaryDatabase binary = DatabaseLayout.open(path, shardCount, options);
+        try {
+            RoleSetCodec codec = RoleSetCodec.load(binary);
+            return new PlayerRoleDatabase(binary, codec, RoleMemberIndex.load(path, binary, codec));
+        } catch (IOException e) {
+            binary.close();
+            throw e;
+        }
     }
 
-    public static PlayerRoleDatabase open(Path path) throws IOException {
-        Uuid2BinaryDatabase binary = Uuid2BinaryDatabase.open(path);
-        return new PlayerRoleDatabase(binary);
+    /**
+     * Starts reading and decoding the roles for the given player on a worker, so that a following call to
+     * {@link #tryLoadInto} for the same player does not need to touch the disk. This is safe to call from any thread.
+     */
+    public void prefetch(UUID uuid) {
+        this.expirePrefetches();
+        this.prefetches.computeIfAbsent(uuid, id -> new Prefetch(
+                CompletableFuture.supplyAsync(() -> this.tryLoad(id), Util.ioPool()),
+                Util.getMillis()
+        ));
+    }
+
+    private void expirePrefetches() {
+        // players may never finish logging in after we start a prefetch for them
+        long time = Util.getMillis();
+        this.prefetches.values().removeIf(prefetch -> time - prefetch.startTime() > PREFETCH_EXPIRY_MS);
     }
 
     public void tryLoadInto(UUID uuid, PlayerRoleSet roles) {
+        Prefetch prefetch = this.prefetches.remove(uuid);
+        ListTag list = prefetch != null ? prefetch.result().join() : this.tryLoad(uuid);
+        if (list != null && !list.isEmpty()) {
+            roles.deserialize(list);
+            roles.rebuildOverridesAndInitialize();
+        }
+    }
+
+    @Nullable
+    private ListTag tryLoad(UUID uuid) {
+        ListTag pendingRoles = this.writeQueue.getPending(uuid);
+        if (pendingRoles != null) {
+            return pendingRoles;
+        }
+
         try {
             ByteBuffer bytes = this.binary.get(uuid);
             if (bytes != null) {
                 try {
-                    deserializeRoles(roles, bytes);
+                    return this.codec.decode(bytes);
                 } catch (IOException e) {
-                    LOGGER.error("Failed to deserialize roles for {}, dropping", uuid, e);
-                    this.binary.remove(uuid);
+                    // leave the record alone, so that it is not lost to a bug in the codec
+                    LOGGER.error("Failed to deserialize roles for {}, loading them as empty until they are next saved", uuid, e);
                 }
             }
         } catch (IOException e) {
             LOGGER.error("Failed to load roles for {}", uuid, e);
         }
+
+        return null;
     }
 
+    /**
+     * Queues the given roles to be saved off-thread. They are visible to {@link #tryLoadInto} immediately.
+     */
     public void trySave(UUID uuid, PlayerRoleSet roles) {
-        try {
+        this.prefetches.remove(uuid);
+        this.writeQueue.enqueue(uuid, roles.serialize());
+    }
+
+    /**
+     * Applies a change to the stored roles of many players at once. Their records are read in a single pass over the
+     * database and written back as one batch, which has completed once this returns. This is safe to call from any
+     * thread, but does not touch the roles of online players.
+     *
+     * @param update returns new roles given the current ones, or {@code null} to leave them unchanged. The current
+     *               roles must not be modified
+     * @return the number of players whose roles were changed
+     */
+    public int updateAll(Collection<UUID> uuids, UnaryOperator<ListTag> update) throws IOException {
+        for (UUID uuid : uuids) {
+            this.prefetches.remove(uuid);
+        }
+
+        int count = this.writeQueue.updateAll(uuids, this::loadAll, update);
+        this.awaitWrites();
+
+        return count;
+    }
+
+    private Map<UUID, ListTag> loadAll(Collection<UUID> uuids) throws IOException {
+        Map<UUID, ListTag> roles = new Object2ObjectOpenHashMap<>(uuids.size());
+        try (BinaryDatabase.Cursor cursor = this.binary.openCursor(uuids)) {
+            while (cursor.next()) {
+                try {
+                    roles.put(cursor.key(), this.codec.decode(cursor.value()));
+                } catch (IOException e) {
+                    LOGGER.error("Failed to deserialize roles for {}, leaving them unchanged", cursor.key(), e);
+                    roles.put(cursor.key(), null);
+                }
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * @return every player that has the given role stored, including writes that are still pending
+     */
+    public Set<UUID> getMembers(String roleId) {
+        return this.memberIndex.getMembers(roleId);
+    }
+
+    private void write(Map<UUID, ListTag> batch) throws IOException {
+        Map<UUID, ByteBuffer> encoded = new Object2ObjectOpenHashMap<>(batch.size());
+        for (Map.Entry<UUID, ListTag> entry : batch.entrySet()) {
+            UUID uuid = entry.getKey();
+            ListTag roles = entry.getValue();
             if (!roles.isEmpty()) {
-                ByteBuffer bytes = serializeRoles(roles);
-                this.binary.put(uuid, bytes);
+                encoded.put(uuid, this.codec.encode(roles));
             } else {
                 this.binary.remove(uuid);
             }
-        } catch (IOException e) {
-            LOGGER.error("Failed to save roles for {}", uuid, e);
         }
+        this.binary.putAll(encoded);
     }
 
-    private static ByteBuffer serializeRoles(PlayerRoleSet roles) throws IOException {
-        CompoundTag nbt = new CompoundTag();
-        nbt.put("roles", roles.serialize());
+    /**
+     * Writes the roles of every stored player as one JSON object per line, such as
+     * {@code {"uuid":"...","roles":["..."]}}. This reads through the whole database sequentially, and is safe to call
+     * from any thread.
+     *
+     * @return the number of players written
+     */
+    public int exportTo(Writer writer) throws IOException {
+        int count = 0;
+        try (BinaryDatabase.Cursor cursor = this.binary.openCursor()) {
+            // taken after opening the cursor so that pending writes are never older than what the cursor sees
+            Map<UUID, ListTag> pending = this.writeQueue.copyPending();
+
+            while (cursor.next()) {
+                UUID uuid = cursor.key();
+                if (uuid.equals(RoleSetCodec.STRING_TABLE_KEY)) {
+                    continue;
+                }
 
-        try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-            NbtIo.writeCompressed(nbt, output);
-            return ByteBuffer.wrap(output.toByteArray());
+                ListTag roles = pending.remove(uuid);
+                if (roles == null) {
+                    try {
+                        roles = this.codec.decode(cursor.value());
+                    } catch (IOException e) {
+                        LOGGER.warn("Skipping unreadable roles for {} in export", uuid, e);
+                        continue;
+                    }
+                }
+
+                if (!roles.isEmpty()) {
+                    writeEntry(writer, uuid, roles);
+                    count++;
+                }
+            }
+
+            for (Map.Entry<UUID, ListTag> entry : pending.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    writeEntry(writer, entry.getKey(), entry.getValue());
+                    count++;
+                }
+            }
         }
+
+        return count;
     }
 
-    private static void deserializeRoles(PlayerRoleSet roles, ByteBuffer bytes) throws IOException {
-        RolesConfig config = RolesConfig.get();
+    private static void writeEntry(Writer writer, UUID uuid, ListTag roles) throws IOException {
+        JsonArray rolesJson = new JsonArray(roles.size());
+        for (int i = 0; i < roles.size(); i++) {
+            rolesJson.add(roles.getString(i));
+        }
 
-        try (ByteArrayInputStream input = new ByteArrayInputStream(bytes.array())) {
-            CompoundTag nbt = NbtIo.readCompressed(input, NbtAccounter.unlimitedHeap());
-            roles.deserialize(config, nbt.getList("roles", Tag.TAG_STRING));
-            roles.rebuildOverridesAndInitialize();
+        JsonObject json = new JsonObject();
+        json.addProperty("uuid", uuid.toString());
+        json.add("roles", rolesJson);
+
+        GSON.toJson(json, writer);
+        writer.write('\n');
+    }
+
+    /**
+     * Reads roles in the format written by {@link #exportTo}, replacing whatever is stored for each player listed.
+     * Entries go through the write queue in large batches, and have all been written once this returns.
+     *
+     * @return the number of players read
+     */
+    public int importFrom(BufferedReader reader) throws IOException {
+        int count = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            UUID uuid;
+            ListTag roles = new ListTag();
+            try {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                uuid = UUID.fromString(GsonHelper.getAsString(json, "uuid"));
+                for (JsonElement role : GsonHelper.getAsJsonArray(json, "roles")) {
+                    roles.add(StringTag.valueOf(role.getAsString()));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("malformed player roles on line " + lineNumber, e);
+            }
+
+            this.prefetches.remove(uuid);
+            this.writeQueue.enqueue(uuid, roles);
+
+            // keep the amount of pending writes bounded
+            if (++count % IMPORT_BATCH_SIZE == 0) {
+                this.awaitWrites();
+            }
+        }
+
+        this.awaitWrites();
+
+        return count;
+    }
+
+    private void awaitWrites() throws IOException {
+        try {
+            this.writeQueue.awaitFlush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for player roles to be written");
         }
     }
 
     @Override
     public void close() throws IOException {
+        this.prefetches.clear();
+
+        boolean saved = true;
+        try {
+            this.writeQueue.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to save pending player roles", e);
+            saved = false;
+        }
+
+        // closing waits for any compaction, so the member index is written against the final database files
         this.binary.close();
+
+        // otherwise the member index already holds the writes that were lost, so leave it to be rebuilt on the next open
+        if (saved) {
+            try {
+                this.memberIndex.writeFile();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write player role member index", e);
+            }
+        }
+    }
+
+    private record Prefetch(CompletableFuture<ListTag> result, long startTime) {
     }
 }
@@ -0,0 +1,264 @@
+package com.lovetropics.perms.store.db;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.nbt.ListTag;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-behind queue that moves encoding and writing player roles off of the server thread. Writes are held as
+ * snapshots of the serialized role list, and flushed in batches by a dedicated thread. A newer write for the same
+ * player replaces one that has not been flushed yet.
+ * <p>
+ * Pending writes stay visible through {@link #getPending(UUID)} until they have reached the database, so that readers
+ * always observe their own writes. A batch that fails to be written stays pending and is retried with an increasing
+ * delay, and whatever still has not been written by the time the queue is closed is reported by {@link #close()}.
+ */
+final class PlayerRoleWriteQueue {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long CLOSE_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int CLOSE_ATTEMPTS = 3;
+
+    private final Writer writer;
+    private final Listener listener;
+    private final Map<UUID, ListTag> pending = new ConcurrentHashMap<>();
+
+    // held while flushing, so that pending writes can be kept from reaching the database for a moment
+    private final Object flushLock = new Object();
+
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // guarded by this queue's monitor, and advanced once every flush has finished
+    private long flushCount;
+    // guarded by this queue's monitor, and set while the most recent flush has failed
+    @Nullable
+    private IOException flushFailure;
+
+    PlayerRoleWriteQueue(Writer writer, Listener listener) {
+        this.writer = writer;
+        this.listener = listener;
+
+        this.thread = new Thread(this::run, "LTPermissions Role Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @param roles snapshot of the roles to write, which must not be modified afterwards. An empty list removes the
+     *              player from the database
+     */
+    void enqueue(UUID uuid, ListTag roles) {
+        if (this.closed) {
+            throw new IllegalStateException("Write queue is closed");
+        }
+        this.pending.compute(uuid, (id, oldRoles) -> {
+            this.listener.onEnqueue(id, roles);
+            return roles;
+        });
+    }
+
+    /**
+     * Atomically updates the roles of each given player, based on their pending write if they have one, and on what
+     * is stored in the database otherwise. Flushing is held off while this runs, so that what was loaded from the
+     * database can not go stale before the update is enqueued.
+     *
+     * @param loader loads the stored roles of players without a pending write. Players whose stored roles can not be
+     *               read are skipped
+     * @param update returns new roles given the current ones, or {@code null} to leave them unchanged. The current
+     *               roles must not be modified
+     * @return the number of players whose roles were changed
+     */
+    int updateAll(Collection<UUID> uuids, Loader loader, UnaryOperator<ListTag> update) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("Write queue is closed");
+        }
+
+        synchronized (this.flushLock) {
+            List<UUID> unpending = new ArrayList<>();
+            for (UUID uuid : uuids) {
+                if (!this.pending.containsKey(uuid)) {
+                    unpending.add(uuid);
+                }
+            }
+            Map<UUID, ListTag> stored = loader.load(unpending);
+
+            int[] count = new int[1];
+            for (UUID uuid : uuids) {
+                this.pending.compute(uuid, (id, oldRoles) -> {
+                    if (oldRoles == null && stored.containsKey(id) && stored.get(id) == null) {
+                        return null;
+                    }
+                    // nothing can have been written in the meantime if there is still no pending write
+                    ListTag roles = oldRoles != null ? oldRoles : stored.getOrDefault(id, new ListTag());
+                    ListTag newRoles = update.apply(roles);
+                    if (newRoles == null) {
+                        return oldRoles;
+                    }
+                    this.listener.onEnqueue(id, newRoles);
+                    count[0]++;
+                    return newRoles;
+                });
+            }
+            return count[0];
+        }
+    }
+
+    @Nullable
+    ListTag getPending(UUID uuid) {
+        return this.pending.get(uuid);
+    }
+
+    Map<UUID, ListTag> copyPending() {
+        return new HashMap<>(this.pending);
+    }
+
+    /**
+     * Blocks until everything that was enqueued before this call has been written.
+     *
+     * @throws IOException if the pending writes could not be written. They stay pending, and will be retried
+     */
+    void awaitFlush() throws InterruptedException, IOException {
+        synchronized (this) {
+            // a flush that is already running may have missed writes enqueued just before this call
+            long targetCount = this.flushCount + 2;
+            while (this.flushCount < targetCount) {
+                if (!this.thread.isAlive()) {
+                    throw new IllegalStateException("Write queue is closed");
+                }
+                LockSupport.unpark(this.thread);
+                this.wait();
+            }
+            if (this.flushFailure != null) {
+                throw new IOException("Failed to write pending player roles", this.flushFailure);
+            }
+        }
+    }
+
+    private void run() {
+        long retryDelayNanos = FLUSH_INTERVAL_NANOS;
+        int closeAttempts = 0;
+        while (true) {
+            // read the flag before flushing so that nothing enqueued before closing can be missed
+            boolean closed = this.closed;
+            IOException failure = this.flush();
+
+            synchronized (this) {
+                this.flushFailure = failure;
+                this.flushCount++;
+                this.notifyAll();
+            }
+
+            long delayNanos = FLUSH_INTERVAL_NANOS;
+            if (failure != null) {
+                retryDelayNanos = Math.min(retryDelayNanos * 2, MAX_RETRY_DELAY_NANOS);
+                delayNanos = retryDelayNanos;
+                LOGGER.error("Failed to save roles for {} players, retrying in {}ms", this.pending.size(), TimeUnit.NANOSECONDS.toMillis(delayNanos), failure);
+            } else {
+                retryDelayNanos = FLUSH_INTERVAL_NANOS;
+            }
+
+            if (closed) {
+                if (failure == null || ++closeAttempts >= CLOSE_ATTEMPTS) {
+                    break;
+                }
+                delayNanos = Math.min(delayNanos, CLOSE_RETRY_DELAY_NANOS);
+            }
+            LockSupport.parkNanos(this, delayNanos);
+        }
+
+        synchronized (this) {
+            this.flushCount = Long.MAX_VALUE;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * @return the reason that the pending writes could not be written, or {@code null} if they all were
+     */
+    @Nullable
+    private IOException flush() {
+        if (this.pending.isEmpty()) {
+            return null;
+        }
+
+        synchronized (this.flushLock) {
+            Map<UUID, ListTag> batch = new HashMap<>(this.pending);
+            try {
+                this.writer.write(batch);
+            } catch (IOException e) {
+                // keep everything pending: the whole batch is written again on the next attempt
+                return e;
+            }
+
+            for (Map.Entry<UUID, ListTag> entry : batch.entrySet()) {
+                // only drop the entry if it was not replaced by a newer write while we were writing
+                this.pending.remove(entry.getKey(), entry.getValue());
+            }
+
+            LOGGER.debug("Flushed {} player role writes", batch.size());
+            return null;
+        }
+    }
+
+    /**
+     * Flushes all pending writes and stops the writer thread. A failing flush is retried a few times before giving up.
+     *
+     * @throws IOException if some writes could never be written, listing the players whose roles were lost
+     */
+    void close() throws IOException {
+        this.closed = true;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while flushing {} pending player role writes", this.pending.size());
+        }
+
+        if (!this.pending.isEmpty()) {
+            IOException failure;
+            synchronized (this) {
+                failure = this.flushFailure;
+            }
+            throw new IOException("Roles for " + this.pending.size() + " players were never saved: " + this.pending.keySet(), failure);
+        }
+    }
+
+    interface Writer {
+        /**
+         * @param batch the roles to write for each player, where an empty list means to remove them
+         */
+        void write(Map<UUID, ListTag> batch) throws IOException;
+    }
+
+    interface Loader {
+        /**
+         * @return the stored roles of each of the given players that has any, mapped to {@code null} for players whose
+         * stored roles could not be read
+         */
+        Map<UUID, ListTag> load(Collection<UUID> uuids) throws IOException;
+    }
+
+    interface Listener {
+        /**
+         * Called for every write as it is enqueued, in the same order as writes for the same player take effect.
+         */
+        void onEnqueue(UUID uuid, ListTag roles);
+    }
+}
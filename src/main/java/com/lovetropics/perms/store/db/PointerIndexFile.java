@@ -0,0 +1,153 @@
+package com.lovetropics.perms.store.db;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar file holding a snapshot of the {@link Uuid2BinaryDatabase} pointer index, so that the database can be opened
+ * without scanning every record. The snapshot is only trusted if it was written against the exact data file that is
+ * being opened: the database removes it before its first write, and writes a new one when closed.
+ * <p>
+ * Layout: a fixed header, followed by (msb, lsb, pointer) triples sorted by UUID, followed by a CRC32 of everything
+ * before it.
+ */
+final class PointerIndexFile {
+    private static final long MAGIC = 0x4C545052_49445801L;
+    private static final int VERSION = 1;
+
+    // magic, version, data version, data size, data modified time, garbage bytes, entry count
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 8 + 8 + 8 + 4;
+    private static final int ENTRY_BYTES = 8 + 8 + 8;
+    private static final int CHECKSUM_BYTES = 4;
+
+    private static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+
+    private PointerIndexFile() {
+    }
+
+    static Path pathFor(Path dataPath) {
+        return dataPath.resolveSibling(dataPath.getFileName() + ".index");
+    }
+
+    /**
+     * @return the stored pointer index, or {@code null} if it is missing or does not match the given data file
+     */
+    @Nullable
+    static Uuid2BinaryDatabase.PointerIndex tryRead(Path dataPath, FileChannel data, int dataVersion) throws IOException {
+        Path path = pathFor(dataPath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            bytes = ByteBuffer.allocate((int) size).order(BYTE_ORDER);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    return null;
+                }
+            }
+            bytes.flip();
+        }
+
+        int checksumOffset = bytes.limit() - CHECKSUM_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate().limit(checksumOffset));
+        if ((int) crc.getValue() != bytes.getInt(checksumOffset)) {
+            return null;
+        }
+
+        if (bytes.getLong() != MAGIC || bytes.getInt() != VERSION || bytes.getInt() != dataVersion) {
+            return null;
+        }
+
+        long dataSize = bytes.getLong();
+        long dataModified = bytes.getLong();
+        if (dataSize != data.size() || dataModified != Files.getLastModifiedTime(dataPath).toMillis()) {
+            return null;
+        }
+
+        long garbageBytes = bytes.getLong();
+        int count = bytes.getInt();
+        if (count < 0 || (long) count * ENTRY_BYTES != checksumOffset - HEADER_BYTES) {
+            return null;
+        }
+
+        UuidPointerTable pointers = new UuidPointerTable(count);
+        for (int i = 0; i < count; i++) {
+            long mostSignificant = bytes.getLong();
+            long leastSignificant = bytes.getLong();
+            long pointer = bytes.getLong();
+            if (pointer < 0 || pointer >= dataSize) {
+                return null;
+            }
+            pointers.put(mostSignificant, leastSignificant, pointer);
+        }
+
+        return new Uuid2BinaryDatabase.PointerIndex(pointers, garbageBytes);
+    }
+
+    static void write(Path dataPath, int dataVersion, UuidPointerTable pointers, long garbageBytes) throws IOException {
+        int count = pointers.size();
+        long[] mostSignificant = new long[count];
+        long[] leastSignificant = new long[count];
+        long[] values = new long[count];
+
+        int[] cursor = new int[1];
+        pointers.forEach((msb, lsb, pointer) -> {
+            int i = cursor[0]++;
+            mostSignificant[i] = msb;
+            leastSignificant[i] = lsb;
+            values[i] = pointer;
+        });
+
+        int[] order = new int[count];
+        Arrays.setAll(order, i -> i);
+        IntArrays.quickSort(order, (a, b) -> {
+            int compare = Long.compare(mostSignificant[a], mostSignificant[b]);
+            return compare != 0 ? compare : Long.compare(leastSignificant[a], leastSignificant[b]);
+        });
+
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES + CHECKSUM_BYTES).order(BYTE_ORDER);
+        bytes.putLong(MAGIC).putInt(VERSION).putInt(dataVersion);
+        bytes.putLong(Files.size(dataPath)).putLong(Files.getLastModifiedTime(dataPath).toMillis());
+        bytes.putLong(garbageBytes).putInt(count);
+        for (int index : order) {
+            bytes.putLong(mostSignificant[index]).putLong(leastSignificant[index]).putLong(values[index]);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate().flip());
+        bytes.putInt((int) crc.getValue());
+        bytes.flip();
+
+        Path path = pathFor(dataPath);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void delete(Path dataPath) throws IOException {
+        Files.deleteIfExists(pathFor(dataPath));
+    }
+}
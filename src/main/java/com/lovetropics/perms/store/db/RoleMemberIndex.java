@@ -0,0 +1,210 @@
+package com.lovetropics.perms.store.db;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import net.minecraft.nbt.ListTag;
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reverse index from role id to the players that have that role stored in the database, so that the members of a role
+ * can be found without going through every player.
+ * <p>
+ * A snapshot is written next to the database on close, holding the size and modified time of every database file,
+ * each role id followed by its members as sorted UUIDs, and a CRC32 of everything before it. Like
+ * {@link PointerIndexFile}, the snapshot is removed before the first change after opening, and the index is rebuilt
+ * with a full scan if it is missing or was written against different database files.
+ */
+final class RoleMemberIndex {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final long MAGIC = 0x4C545052_4D424901L;
+    private static final int VERSION = 2;
+
+    private static final int CHECKSUM_BYTES = 4;
+
+    private final Path path;
+    private final Collection<Path> dataPaths;
+    private final Map<String, Set<UUID>> membersByRole = new Object2ObjectOpenHashMap<>();
+    private boolean fileDeleted;
+
+    private RoleMemberIndex(Path path, Collection<Path> dataPaths) {
+        this.path = path;
+        this.dataPaths = dataPaths;
+    }
+
+    static RoleMemberIndex load(Path databasePath, BinaryDatabase binary, RoleSetCodec codec) throws IOException {
+        RoleMemberIndex index = new RoleMemberIndex(databasePath.resolveSibling(databasePath.getFileName() + ".members"), binary.files());
+        if (!index.tryRead()) {
+            LOGGER.info("Player role member index at {} is missing or invalid, rebuilding", index.path);
+            index.rebuild(binary, codec);
+        }
+        return index;
+    }
+
+    private boolean tryRead() throws IOException {
+        if (!Files.isRegularFile(this.path)) {
+            return false;
+        }
+
+        byte[] bytes = Files.readAllBytes(this.path);
+        if (bytes.length < CHECKSUM_BYTES) {
+            return false;
+        }
+
+        int checksumOffset = bytes.length - CHECKSUM_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, checksumOffset);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, checksumOffset, CHECKSUM_BYTES).getInt()) {
+            return false;
+        }
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, checksumOffset))) {
+            if (input.readLong() != MAGIC || input.readInt() != VERSION) {
+                return false;
+            }
+
+            if (input.readInt() != this.dataPaths.size()) {
+                return false;
+            }
+            for (Path dataPath : this.dataPaths) {
+                long dataSize = input.readLong();
+                long dataModified = input.readLong();
+                if (!Files.isRegularFile(dataPath) || dataSize != Files.size(dataPath) || dataModified != Files.getLastModifiedTime(dataPath).toMillis()) {
+                    return false;
+                }
+            }
+
+            int roleCount = input.readInt();
+            for (int i = 0; i < roleCount; i++) {
+                String role = input.readUTF();
+                int memberCount = input.readInt();
+                Set<UUID> members = new ObjectOpenHashSet<>(memberCount);
+                for (int j = 0; j < memberCount; j++) {
+                    members.add(new UUID(input.readLong(), input.readLong()));
+                }
+                this.membersByRole.put(role, members);
+            }
+        }
+
+        return true;
+    }
+
+    private void rebuild(BinaryDatabase binary, RoleSetCodec codec) throws IOException {
+        this.membersByRole.clear();
+
+        try (BinaryDatabase.Cursor cursor = binary.openCursor()) {
+            while (cursor.next()) {
+                UUID uuid = cursor.key();
+                if (uuid.equals(RoleSetCodec.STRING_TABLE_KEY)) {
+                    continue;
+                }
+
+                try {
+                    this.add(uuid, codec.decode(cursor.value()));
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping unreadable roles for {} in member index", uuid, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the roles indexed for the given player.
+     *
+     * @param roles the player's new roles, or an empty list if they were removed
+     */
+    synchronized void update(UUID uuid, ListTag roles) {
+        this.deleteFile();
+
+        // there are only ever a handful of roles, so this is cheaper than looking up which roles the player had before
+        for (Set<UUID> members : this.membersByRole.values()) {
+            members.remove(uuid);
+        }
+        this.add(uuid, roles);
+        this.membersByRole.values().removeIf(Set::isEmpty);
+    }
+
+    private void add(UUID uuid, ListTag roles) {
+        for (int i = 0; i < roles.size(); i++) {
+            this.membersByRole.computeIfAbsent(roles.getString(i), role -> new ObjectOpenHashSet<>()).add(uuid);
+        }
+    }
+
+    /**
+     * @return a copy of the players that have the given role
+     */
+    synchronized Set<UUID> getMembers(String role) {
+        Set<UUID> members = this.membersByRole.get(role);
+        return members != null ? new ObjectOpenHashSet<>(members) : new ObjectOpenHashSet<>();
+    }
+
+    private void deleteFile() {
+        if (!this.fileDeleted) {
+            try {
+                Files.deleteIfExists(this.path);
+                this.fileDeleted = true;
+            } catch (IOException e) {
+                LOGGER.error("Failed to delete stale player role member index at {}", this.path, e);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the index, which must only be done once every change to it has reached the database.
+     */
+    synchronized void writeFile() throws IOException {
+        Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (OutputStream fileOutput = Files.newOutputStream(tempPath)) {
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOutput), crc));
+            output.writeLong(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(this.dataPaths.size());
+            for (Path dataPath : this.dataPaths) {
+                output.writeLong(Files.size(dataPath));
+                output.writeLong(Files.getLastModifiedTime(dataPath).toMillis());
+            }
+
+            output.writeInt(this.membersByRole.size());
+            for (Map.Entry<String, Set<UUID>> entry : this.membersByRole.entrySet()) {
+                UUID[] members = entry.getValue().toArray(new UUID[0]);
+                Arrays.sort(members);
+
+                output.writeUTF(entry.getKey());
+                output.writeInt(members.length);
+                for (UUID member : members) {
+                    output.writeLong(member.getMostSignificantBits());
+                    output.writeLong(member.getLeastSignificantBits());
+                }
+            }
+
+            // written past the checksummed stream, so that it does not cover itself
+            output.flush();
+            fileOutput.write(ByteBuffer.allocate(CHECKSUM_BYTES).putInt((int) crc.getValue()).array());
+        }
+
+        Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.fileDeleted = false;
+    }
+}
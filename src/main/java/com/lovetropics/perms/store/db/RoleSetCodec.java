@@ -0,0 +1,166 @@
+package com.lovetropics.perms.store.db;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.Utf8String;
+import net.minecraft.network.VarInt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Encodes the role list stored for each player. Role ids are interned through a string table that is stored in the
+ * database itself under a reserved key, so that each record only needs to hold a count followed by small integers.
+ * <p>
+ * Records written as gzip-compressed NBT by older versions can still be read, and are replaced the next time that
+ * player's roles are saved.
+ */
+final class RoleSetCodec {
+    static final UUID STRING_TABLE_KEY = new UUID(0L, 0L);
+
+    private static final byte ROLES_VERSION = 1;
+    private static final byte STRING_TABLE_VERSION = 1;
+    private static final byte GZIP_MAGIC = 0x1F;
+
+    private static final int MAX_ROLE_ID_LENGTH = Short.MAX_VALUE;
+
+    private final BinaryDatabase binary;
+
+    // only appended to, and replaced as a whole so that it can be read from any thread
+    private volatile String[] strings;
+    private final Object2IntMap<String> stringIds = new Object2IntOpenHashMap<>();
+
+    private RoleSetCodec(BinaryDatabase binary, String[] strings) {
+        this.binary = binary;
+        this.strings = strings;
+        this.stringIds.defaultReturnValue(-1);
+        for (int i = 0; i < strings.length; i++) {
+            this.stringIds.put(strings[i], i);
+        }
+    }
+
+    static RoleSetCodec load(BinaryDatabase binary) throws IOException {
+        ByteBuffer bytes = binary.get(STRING_TABLE_KEY);
+        if (bytes == null) {
+            return new RoleSetCodec(binary, new String[0]);
+        }
+
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try {
+            byte version = buf.readByte();
+            if (version != STRING_TABLE_VERSION) {
+                throw new IOException("unsupported role string table version (" + version + ")");
+            }
+
+            String[] strings = new String[VarInt.read(buf)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = Utf8String.read(buf, MAX_ROLE_ID_LENGTH);
+            }
+            return new RoleSetCodec(binary, strings);
+        } catch (RuntimeException e) {
+            throw new IOException("malformed role string table", e);
+        }
+    }
+
+    /**
+     * Encodes the given role ids, first storing any ids that have not been seen before in the string table. Only the
+     * thread that writes to the database should call this, so that the table is always stored before any record
+     * referring to it.
+     */
+    synchronized ByteBuffer encode(ListTag roles) throws IOException {
+        int[] ids = new int[roles.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.intern(roles.getString(i));
+        }
+
+        ByteBuf buf = Unpooled.buffer(2 + ids.length);
+        buf.writeByte(ROLES_VERSION);
+        VarInt.write(buf, ids.length);
+        for (int id : ids) {
+            VarInt.write(buf, id);
+        }
+
+        return ByteBuffer.wrap(ByteBufUtil.getBytes(buf));
+    }
+
+    private int intern(String role) throws IOException {
+        int id = this.stringIds.getInt(role);
+        if (id != -1) {
+            return id;
+        }
+
+        String[] strings = Arrays.copyOf(this.strings, this.strings.length + 1);
+        id = strings.length - 1;
+        strings[id] = role;
+
+        this.binary.put(STRING_TABLE_KEY, encodeStringTable(strings));
+
+        this.strings = strings;
+        this.stringIds.put(role, id);
+
+        return id;
+    }
+
+    private static ByteBuffer encodeStringTable(String[] strings) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(STRING_TABLE_VERSION);
+        VarInt.write(buf, strings.length);
+        for (String string : strings) {
+            Utf8String.write(buf, string, MAX_ROLE_ID_LENGTH);
+        }
+        return ByteBuffer.wrap(ByteBufUtil.getBytes(buf));
+    }
+
+    ListTag decode(ByteBuffer bytes) throws IOException {
+        if (!bytes.hasRemaining()) {
+            throw new IOException("empty role record");
+        }
+
+        if (bytes.get(bytes.position()) == GZIP_MAGIC) {
+            return decodeLegacy(bytes);
+        }
+
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try {
+            byte version = buf.readByte();
+            if (version != ROLES_VERSION) {
+                throw new IOException("unsupported roles version (" + version + ")");
+            }
+
+            String[] strings = this.strings;
+            int count = VarInt.read(buf);
+
+            ListTag roles = new ListTag();
+            for (int i = 0; i < count; i++) {
+                int id = VarInt.read(buf);
+                if (id < 0 || id >= strings.length) {
+                    throw new IOException("unknown role string id (" + id + ")");
+                }
+                roles.add(StringTag.valueOf(strings[id]));
+            }
+            return roles;
+        } catch (RuntimeException e) {
+            throw new IOException("malformed roles record", e);
+        }
+    }
+
+    private static ListTag decodeLegacy(ByteBuffer bytes) throws IOException {
+        try (InputStream input = new ByteBufInputStream(Unpooled.wrappedBuffer(bytes), true)) {
+            CompoundTag nbt = NbtIo.readCompressed(input, NbtAccounter.unlimitedHeap());
+            return nbt.getList("roles", Tag.TAG_STRING);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.lovetropics.perms.store.db;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Splits keys across a fixed number of {@link Uuid2BinaryDatabase} files by {@link UUID#hashCode()}. Each shard has
+ * its own file, pointer index and lock, so that keys in different shards can be read and written in parallel. The
+ * shards share a small pool of background threads for syncing and compaction.
+ * <p>
+ * Which shard a key belongs to depends on the shard count, so changing the count means moving every entry. See
+ * {@link DatabaseLayout}.
+ */
+public final class ShardedUuid2BinaryDatabase implements BinaryDatabase {
+    private static final int BACKGROUND_THREADS = 2;
+
+    private final Uuid2BinaryDatabase[] shards;
+    private final ScheduledExecutorService backgroundExecutor;
+
+    private ShardedUuid2BinaryDatabase(Uuid2BinaryDatabase[] shards, ScheduledExecutorService backgroundExecutor) {
+        this.shards = shards;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    public static ShardedUuid2BinaryDatabase open(Path directory, int count, DatabaseOptions options) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("shard count must be positive (" + count + ")");
+        }
+
+        Files.createDirectories(directory);
+
+        ScheduledExecutorService backgroundExecutor = Uuid2BinaryDatabase.createBackgroundExecutor(Math.min(count, BACKGROUND_THREADS));
+        Uuid2BinaryDatabase[] shards = new Uuid2BinaryDatabase[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                shards[i] = Uuid2BinaryDatabase.open(directory.resolve("shard_" + i), options, backgroundExecutor);
+            }
+        } catch (IOException e) {
+            try {
+                closeAll(shards, backgroundExecutor);
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+
+        return new ShardedUuid2BinaryDatabase(shards, backgroundExecutor);
+    }
+
+    private Uuid2BinaryDatabase shardFor(UUID key) {
+        return this.shards[this.shardIndexFor(key)];
+    }
+
+    private int shardIndexFor(UUID key) {
+        return Math.floorMod(key.hashCode(), this.shards.length);
+    }
+
+    @Override
+    @Nullable
+    public ByteBuffer get(UUID key) throws IOException {
+        return this.shardFor(key).get(key);
+    }
+
+    @Override
+    public void put(UUID key, ByteBuffer bytes) throws IOException {
+        this.shardFor(key).put(key, bytes);
+    }
+
+    @Override
+    public void putAll(Map<UUID, ByteBuffer> entries) throws IOException {
+        Map<Uuid2BinaryDatabase, Map<UUID, ByteBuffer>> entriesByShard = new HashMap<>();
+        for (Map.Entry<UUID, ByteBuffer> entry : entries.entrySet()) {
+            entriesByShard.computeIfAbsent(this.shardFor(entry.getKey()), shard -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<Uuid2BinaryDatabase, Map<UUID, ByteBuffer>> entry : entriesByShard.entrySet()) {
+            entry.getKey().putAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean remove(UUID key) throws IOException {
+        return this.shardFor(key).remove(key);
+    }
+
+    /**
+     * Opens a cursor that goes through each shard in turn. Each shard is only visited as of when the cursor reaches it.
+     */
+    @Override
+    public Cursor openCursor() {
+        return new ShardCursor(index -> this.shards[index].openCursor());
+    }
+
+    @Override
+    public Cursor openCursor(Collection<UUID> keys) {
+        List<List<UUID>> keysByShard = new ArrayList<>(this.shards.length);
+        for (int i = 0; i < this.shards.length; i++) {
+            keysByShard.add(new ArrayList<>());
+        }
+        for (UUID key : keys) {
+            keysByShard.get(this.shardIndexFor(key)).add(key);
+        }
+
+        return new ShardCursor(index -> this.shards[index].openCursor(keysByShard.get(index)));
+    }
+
+    @Override
+    public Collection<Path> files() {
+        List<Path> files = new ArrayList<>(this.shards.length);
+        for (Uuid2BinaryDatabase shard : this.shards) {
+            files.addAll(shard.files());
+        }
+        return files;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAll(this.shards, this.backgroundExecutor);
+    }
+
+    private final class ShardCursor implements Cursor {
+        private final ShardOpener opener;
+        private int nextShard;
+        @Nullable
+        private Cursor current;
+
+        ShardCursor(ShardOpener opener) {
+            this.opener = opener;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (this.current != null) {
+                    if (this.current.next()) {
+                        return true;
+                    }
+                    this.current.close();
+                    this.current = null;
+                }
+
+                if (this.nextShard >= ShardedUuid2BinaryDatabase.this.shards.length) {
+                    return false;
+                }
+                this.current = this.opener.open(this.nextShard++);
+            }
+        }
+
+        @Override
+        public UUID key() {
+            return this.current().key();
+        }
+
+        @Override
+        public ByteBuffer value() {
+            return this.current().value();
+        }
+
+        private Cursor current() {
+            if (this.current == null) {
+                throw new IllegalStateException("Cursor is not at an entry");
+            }
+            return this.current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.current != null) {
+                this.current.close();
+                this.current = null;
+            }
+        }
+    }
+
+    private interface ShardOpener {
+        Cursor open(int index) throws IOException;
+    }
+
+    private static void closeAll(Uuid2BinaryDatabase[] shards, ScheduledExecutorService backgroundExecutor) throws IOException {
+        IOException exception = null;
+        for (Uuid2BinaryDatabase shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+
+        // every shard has waited for its own background work, so there is nothing left to wait for
+        backgroundExecutor.shutdown();
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
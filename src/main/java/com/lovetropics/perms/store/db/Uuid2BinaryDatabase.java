@@ -1,286 +1,783 @@
 package com.lovetropics.perms.store.db;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongMaps;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.slf4j.Logger;
 
 import javax.annotation.Nullable;
-import java.io.Closeable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32C;
 
 /**
- * Very simple persistent database indexed by UUID. This implementation is not optimized for performance, but rather
- * for simplicity.
+ * Very simple persistent database indexed by UUID.
+ * <p>
+ * The file is an append-only log of records. Every write appends a new record that supersedes any earlier record for
+ * the same key, and a removal appends an empty tombstone record. Records are never modified once written, so that
+ * writes cost the same no matter how large the file is. Superseded records are reclaimed by a background compaction
+ * pass once they make up enough of the file.
+ * <p>
+ * Every record carries a checksum. Opening the file replays the log, and anything after the last intact record, such as
+ * a record that was only partly written before a crash, is cut off. As each {@link #put} or {@link #remove} is a single
+ * appended record, it is applied either fully or not at all. How often the file is synced to disk is set by
+ * {@link DatabaseOptions#syncMode()}.
+ * <p>
+ * Files written by older versions, either without record checksums or without a file header at all, are upgraded on
+ * open.
+ * <p>
+ * A snapshot of the pointer index is written next to the file on close, and used on the next open in place of
+ * scanning the whole file. See {@link PointerIndexFile}.
+ * <p>
+ * Writes and the locked read path are serialized on the database monitor. When the database is memory mapped, reads
+ * instead look up the pointer index optimistically and return a slice of the mapping without taking any lock, falling
+ * back to the locked path only if they raced with a write.
  */
-public final class Uuid2BinaryDatabase implements Closeable {
+public final class Uuid2BinaryDatabase implements BinaryDatabase {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
     private static final int MAX_VALUE_SIZE = 4 * 1024 * 1024;
 
+    // the 7th byte is zero so that this can never be confused with a player UUID at the start of a legacy file
+    private static final long MAGIC = 0x4C545052_44420001L;
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 8 + 4;
+
+    // files from before the file header was introduced
+    private static final int HEADERLESS_VERSION = 0;
+
     private static final int UUID_BYTES = 16;
     private static final int SIZE_BYTES = 4;
-    private static final int HEADER_BYTES = UUID_BYTES + SIZE_BYTES;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int HEADER_BYTES = UUID_BYTES + SIZE_BYTES + CHECKSUM_BYTES;
+    // records in files before version 2 have no checksum
+    private static final int UNCHECKED_HEADER_BYTES = UUID_BYTES + SIZE_BYTES;
+
+    // set in the size field of a tombstone. Files before version 2 instead set this in place on superseded records
+    private static final int DEAD_FLAG = 0x80000000;
+
+    private static final long NULL_POINTER = UuidPointerTable.NULL_POINTER;
+
+    private static final int SCAN_BUFFER_BYTES = 256 * 1024;
+    private static final int WRITE_CHUNK_BYTES = 256 * 1024;
 
-    private static final long NULL_POINTER = -1;
+    private static final long COMPACT_MIN_GARBAGE_BYTES = 64 * 1024;
+    private static final double COMPACT_GARBAGE_RATIO = 0.5;
 
     private static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
 
-    private final FileChannel file;
-    private final Object2LongMap<UUID> pointers;
+    private static final ByteBuffer MISSING = ByteBuffer.allocate(0);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
-    private final ByteBuffer uuidBytes = ByteBuffer.allocate(16).order(BYTE_ORDER);
-    private final ByteBuffer sizeBytes = ByteBuffer.allocate(4).order(BYTE_ORDER);
-    private final LongBuffer uuidBuffer = this.uuidBytes.asLongBuffer();
-    private final IntBuffer sizeBuffer = this.sizeBytes.asIntBuffer();
+    private final Path path;
+    private final DatabaseOptions options;
+    private FileChannel file;
+    @Nullable
+    private volatile FileMapping mapping;
+    private UuidPointerTable pointers;
+    private long garbageBytes;
+    private boolean indexFileDeleted;
+
+    // guards any change to the pointers or the file they point into, for the benefit of lock-free readers
+    private final StampedLock pointerLock = new StampedLock();
+
+    // may be shared with other databases, in which case it is only shut down by its owner
+    private final ScheduledExecutorService backgroundExecutor;
+    private final boolean ownsBackgroundExecutor;
+    @Nullable
+    private final ScheduledFuture<?> syncTask;
+    private boolean compactionScheduled;
+    @Nullable
+    private Set<UUID> touchedDuringCompaction;
+    private boolean unsynced;
+    private boolean closed;
 
-    private final ByteBuffer[] headerBytes = new ByteBuffer[] { this.uuidBytes, this.sizeBytes };
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+    private final ByteBuffer sizeBytes = ByteBuffer.allocate(SIZE_BYTES).order(BYTE_ORDER);
+    private final CRC32C crc = new CRC32C();
 
-    private Uuid2BinaryDatabase(FileChannel file, Object2LongMap<UUID> pointers) {
+    private Uuid2BinaryDatabase(Path path, DatabaseOptions options, FileChannel file, PointerIndex index, ScheduledExecutorService backgroundExecutor, boolean ownsBackgroundExecutor) {
+        this.path = path;
+        this.options = options;
         this.file = file;
-        this.pointers = pointers;
-        this.pointers.defaultReturnValue(NULL_POINTER);
+        this.mapping = this.createMapping(file);
+        this.pointers = index.pointers;
+        this.garbageBytes = index.garbageBytes;
+        this.backgroundExecutor = backgroundExecutor;
+        this.ownsBackgroundExecutor = ownsBackgroundExecutor;
+
+        if (options.syncMode() == DatabaseOptions.SyncMode.INTERVAL) {
+            long interval = options.syncIntervalMillis();
+            this.syncTask = backgroundExecutor.scheduleWithFixedDelay(this::syncInBackground, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncTask = null;
+        }
     }
 
     public static Uuid2BinaryDatabase open(Path path) throws IOException {
+        return open(path, DatabaseOptions.DEFAULT);
+    }
+
+    public static Uuid2BinaryDatabase open(Path path, DatabaseOptions options) throws IOException {
+        ScheduledExecutorService backgroundExecutor = createBackgroundExecutor(1);
+        try {
+            return open(path, options, backgroundExecutor, true);
+        } catch (IOException e) {
+            backgroundExecutor.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a database that runs its background syncs and compactions on the given executor, which is left running
+     * when the database is closed.
+     */
+    static Uuid2BinaryDatabase open(Path path, DatabaseOptions options, ScheduledExecutorService backgroundExecutor) throws IOException {
+        return open(path, options, backgroundExecutor, false);
+    }
+
+    static ScheduledExecutorService createBackgroundExecutor(int threads) {
+        return Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("LTPermissions Database Worker %d").setDaemon(true).build()
+        );
+    }
+
+    private static Uuid2BinaryDatabase open(Path path, DatabaseOptions options, ScheduledExecutorService backgroundExecutor, boolean ownsBackgroundExecutor) throws IOException {
         FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
-        Object2LongMap<UUID> pointers = buildPointerIndex(channel);
-        return new Uuid2BinaryDatabase(channel, pointers);
+
+        long fileSize = channel.size();
+        if (fileSize == 0) {
+            writeFileHeader(channel);
+            return new Uuid2BinaryDatabase(path, options, channel, new PointerIndex(new UuidPointerTable(), 0), backgroundExecutor, ownsBackgroundExecutor);
+        }
+
+        int version = readFileVersion(channel);
+        if (version == VERSION) {
+            PointerIndex index = PointerIndexFile.tryRead(path, channel, VERSION);
+            if (index == null) {
+                LOGGER.info("Player role database index at {} is missing or stale, rebuilding", path);
+                index = buildPointerIndex(path, channel, FILE_HEADER_BYTES, HEADER_BYTES);
+            }
+            return new Uuid2BinaryDatabase(path, options, channel, index, backgroundExecutor, ownsBackgroundExecutor);
+        }
+
+        LOGGER.info("Upgrading player role database at {} from version {}", path, version);
+        long start = version == HEADERLESS_VERSION ? 0 : FILE_HEADER_BYTES;
+        PointerIndex index = buildPointerIndex(path, channel, start, UNCHECKED_HEADER_BYTES);
+        Uuid2BinaryDatabase database = new Uuid2BinaryDatabase(path, options, channel, index, backgroundExecutor, ownsBackgroundExecutor);
+        try {
+            database.compact(UNCHECKED_HEADER_BYTES);
+        } catch (IOException e) {
+            database.close();
+            throw e;
+        }
+        return database;
+    }
+
+    private static int readFileVersion(FileChannel channel) throws IOException {
+        if (channel.size() < FILE_HEADER_BYTES) {
+            return HEADERLESS_VERSION;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(BYTE_ORDER);
+        readToEnd(channel, header, 0);
+        if (header.getLong(0) != MAGIC) {
+            return HEADERLESS_VERSION;
+        }
+
+        int version = header.getInt(8);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported database version (" + version + ")");
+        }
+        return version;
+    }
+
+    private static void writeFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(BYTE_ORDER);
+        header.putLong(MAGIC).putInt(VERSION).flip();
+        writeToEnd(channel, header, 0);
     }
 
-    private static Object2LongMap<UUID> buildPointerIndex(FileChannel channel) throws IOException {
-        Object2LongMap<UUID> pointers = new Object2LongOpenHashMap<>();
+    /**
+     * Replays the log from the given offset. If it ends in a record that is incomplete or fails its checksum, the file
+     * is truncated to the last intact record, after keeping a copy of the original.
+     */
+    private static PointerIndex buildPointerIndex(Path path, FileChannel channel, long start, int headerBytes) throws IOException {
+        UuidPointerTable pointers = new UuidPointerTable();
+        long garbageBytes = 0;
 
-        ByteBuffer uuidBytes = ByteBuffer.allocate(16).order(BYTE_ORDER);
-        ByteBuffer sizeBytes = ByteBuffer.allocate(4).order(BYTE_ORDER);
-        LongBuffer uuidBuffer = uuidBytes.asLongBuffer();
-        IntBuffer sizeBuffer = sizeBytes.asIntBuffer();
+        boolean checked = headerBytes == HEADER_BYTES;
+        ByteBuffer checkedHeader = ByteBuffer.allocate(UUID_BYTES + SIZE_BYTES).order(BYTE_ORDER);
+        ByteBuffer sizeBytes = ByteBuffer.allocate(SIZE_BYTES).order(BYTE_ORDER);
+        CRC32C crc = new CRC32C();
+        byte[] payload = new byte[0];
 
-        int pointer = 0;
+        // the stream is deliberately left open, as closing it would close the channel
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(start)), SCAN_BUFFER_BYTES));
+
+        long pointer = start;
 
         long fileSize = channel.size();
         while (pointer < fileSize) {
-            channel.position(pointer);
+            long remaining = fileSize - pointer;
+            if (remaining < headerBytes) {
+                break;
+            }
+
+            long mostSignificant = input.readLong();
+            long leastSignificant = input.readLong();
+            int sizeField = input.readInt();
 
-            uuidBytes.clear();
-            sizeBytes.clear();
-            channel.read(uuidBytes);
-            channel.read(sizeBytes);
+            int size = sizeField & ~DEAD_FLAG;
+            if (size > MAX_VALUE_SIZE || headerBytes + size > remaining) {
+                break;
+            }
+
+            if (checked) {
+                int checksum = input.readInt();
+                if (payload.length < size) {
+                    payload = new byte[Math.max(size, payload.length * 2)];
+                }
+                input.readFully(payload, 0, size);
+
+                checkedHeader.clear();
+                checkedHeader.putLong(mostSignificant).putLong(leastSignificant).putInt(sizeField).flip();
+                crc.reset();
+                crc.update(checkedHeader);
+                crc.update(payload, 0, size);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } else {
+                input.skipNBytes(size);
+            }
 
-            UUID uuid = new UUID(uuidBuffer.get(0), uuidBuffer.get(1));
-            int size = validateSize(sizeBuffer.get(0));
+            if ((sizeField & DEAD_FLAG) != 0 && !checked) {
+                garbageBytes += headerBytes + size;
+            } else if ((sizeField & DEAD_FLAG) != 0) {
+                long lastPointer = pointers.remove(mostSignificant, leastSignificant);
+                garbageBytes += headerBytes;
+                if (lastPointer != NULL_POINTER) {
+                    garbageBytes += headerBytes + readSize(channel, sizeBytes, lastPointer);
+                }
+            } else {
+                // a later record always supersedes an earlier one that we did not get to mark as dead
+                long lastPointer = pointers.put(mostSignificant, leastSignificant, pointer);
+                if (lastPointer != NULL_POINTER) {
+                    garbageBytes += headerBytes + readSize(channel, sizeBytes, lastPointer);
+                }
+            }
 
-            pointers.put(uuid, pointer);
+            pointer += headerBytes + size;
+        }
 
-            pointer += HEADER_BYTES + size;
+        if (pointer < fileSize) {
+            truncateCorruptTail(path, channel, pointer);
         }
 
-        return pointers;
+        return new PointerIndex(pointers, garbageBytes);
+    }
+
+    private static void truncateCorruptTail(Path path, FileChannel channel, long validSize) throws IOException {
+        long fileSize = channel.size();
+        Path backupPath = path.resolveSibling(path.getFileName() + ".corrupt");
+        LOGGER.warn(
+                "Player role database at {} ends in {} bytes of incomplete or corrupt records, most likely from an unclean shutdown. Discarding them, and keeping a copy of the original file at {}",
+                path, fileSize - validSize, backupPath
+        );
+
+        Files.copy(path, backupPath, StandardCopyOption.REPLACE_EXISTING);
+        channel.truncate(validSize);
+        channel.force(true);
     }
 
     @Nullable
-    public synchronized ByteBuffer get(UUID key) throws IOException {
-        long pointer = this.pointers.getLong(key);
-        if (pointer == NULL_POINTER) {
+    private FileMapping createMapping(FileChannel file) {
+        return this.options.memoryMapped() ? new FileMapping(file, HEADER_BYTES + MAX_VALUE_SIZE, BYTE_ORDER) : null;
+    }
+
+    @Override
+    @Nullable
+    public ByteBuffer get(UUID key) throws IOException {
+        // the mapping and pointers must both be read within the validated window, as compaction swaps them together
+        long stamp = this.pointerLock.tryOptimisticRead();
+        FileMapping mapping = this.mapping;
+        if (mapping != null && stamp != 0) {
+            ByteBuffer bytes = tryGetMapped(mapping, this.pointers, key);
+            if (bytes != null && this.pointerLock.validate(stamp)) {
+                return bytes != MISSING ? bytes : null;
+            }
+        }
+
+        return this.getLocked(key);
+    }
+
+    /**
+     * Reads a value without holding any lock. This may observe the pointer index in an inconsistent state, so the
+     * result can only be trusted if no write happened in the meantime.
+     *
+     * @return the value, {@link #MISSING} if the key is absent, or {@code null} if the read should be retried under the lock
+     */
+    @Nullable
+    private static ByteBuffer tryGetMapped(FileMapping mapping, UuidPointerTable pointers, UUID key) {
+        try {
+            long pointer = pointers.get(key);
+            if (pointer == NULL_POINTER) {
+                return MISSING;
+            }
+
+            ByteBuffer header = mapping.slice(pointer, HEADER_BYTES);
+            if (header.getLong(0) != key.getMostSignificantBits() || header.getLong(8) != key.getLeastSignificantBits()) {
+                // the pointer belongs to another file than the mapping
+                return null;
+            }
+
+            int sizeField = header.getInt(UUID_BYTES);
+            if ((sizeField & DEAD_FLAG) != 0 || sizeField > MAX_VALUE_SIZE) {
+                return null;
+            }
+
+            return mapping.slice(pointer + HEADER_BYTES, sizeField).asReadOnlyBuffer();
+        } catch (IOException | RuntimeException e) {
             return null;
         }
+    }
 
-        this.file.position(pointer + UUID_BYTES);
+    @Nullable
+    private synchronized ByteBuffer getLocked(UUID key) throws IOException {
+        long pointer = this.pointers.get(key);
+        if (pointer == NULL_POINTER) {
+            return null;
+        }
 
-        this.sizeBytes.clear();
-        this.readToEnd(this.sizeBytes);
+        int size = this.readSize(pointer);
+        FileMapping mapping = this.mapping;
+        if (mapping != null) {
+            return mapping.slice(pointer + HEADER_BYTES, size).asReadOnlyBuffer();
+        }
 
-        int size = this.sizeBuffer.get(0);
         ByteBuffer buffer = ByteBuffer.allocate(size).order(BYTE_ORDER);
-        this.readToEnd(buffer);
+        readToEnd(this.file, buffer, pointer + HEADER_BYTES);
 
-        return buffer;
+        return buffer.flip();
     }
 
+    @Override
     public synchronized void put(UUID key, ByteBuffer bytes) throws IOException {
-        validateSize(bytes.capacity());
+        validateSize(bytes.remaining());
+        this.deleteIndexFile();
 
-        long pointer = this.pointers.getLong(key);
-        if (pointer == NULL_POINTER) {
-            this.push(key, bytes);
-        } else {
-            this.update(pointer, bytes);
+        long pointer = writeRecord(this.file, this.recordHeader, this.crc, key.getMostSignificantBits(), key.getLeastSignificantBits(), 0, bytes);
+
+        long stamp = this.pointerLock.writeLock();
+        long lastPointer;
+        try {
+            lastPointer = this.pointers.put(key, pointer);
+        } finally {
+            this.pointerLock.unlockWrite(stamp);
+        }
+
+        if (lastPointer != NULL_POINTER) {
+            this.garbageBytes += HEADER_BYTES + this.readSize(lastPointer);
         }
+
+        this.touch(key);
+        this.afterWrite();
     }
 
-    public synchronized boolean remove(UUID key) throws IOException {
-        long pointer = this.pointers.removeLong(key);
-        if (pointer == NULL_POINTER) {
-            return false;
+    /**
+     * Appends all the given entries with a few large writes, and publishes them to readers at once.
+     */
+    @Override
+    public synchronized void putAll(Map<UUID, ByteBuffer> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
         }
 
-        this.file.position(pointer + UUID_BYTES);
+        for (ByteBuffer bytes : entries.values()) {
+            validateSize(bytes.remaining());
+        }
+        this.deleteIndexFile();
+
+        UUID[] keys = new UUID[entries.size()];
+        long[] pointers = new long[entries.size()];
+        int count = 0;
+
+        ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK_BYTES);
+        long chunkPointer = this.file.size();
+        for (Map.Entry<UUID, ByteBuffer> entry : entries.entrySet()) {
+            UUID key = entry.getKey();
+            ByteBuffer bytes = entry.getValue();
+            int recordBytes = HEADER_BYTES + bytes.remaining();
+            ByteBuffer header = encodeHeader(this.recordHeader, this.crc, key.getMostSignificantBits(), key.getLeastSignificantBits(), bytes.remaining(), bytes);
+
+            if (chunk.remaining() < recordBytes) {
+                chunkPointer = this.writeChunk(chunk, chunkPointer);
+            }
 
-        this.sizeBytes.clear();
-        this.readToEnd(this.sizeBytes);
+            long pointer = chunkPointer + chunk.position();
+            if (chunk.remaining() >= recordBytes) {
+                chunk.put(header).put(bytes.duplicate());
+            } else {
+                // too large for a chunk of its own, so the chunk is empty and we write it directly
+                writeToEnd(this.file, header, pointer);
+                writeToEnd(this.file, bytes.duplicate(), pointer + HEADER_BYTES);
+                chunkPointer += recordBytes;
+            }
 
-        int size = validateSize(this.sizeBuffer.get(0));
+            keys[count] = key;
+            pointers[count] = pointer;
+            count++;
+        }
+        this.writeChunk(chunk, chunkPointer);
 
-        long endPointer = pointer + HEADER_BYTES + size;
-        this.shiftAfter(endPointer, -(size + HEADER_BYTES));
+        long[] lastPointers = new long[count];
+        long stamp = this.pointerLock.writeLock();
+        try {
+            for (int i = 0; i < count; i++) {
+                lastPointers[i] = this.pointers.put(keys[i], pointers[i]);
+            }
+        } finally {
+            this.pointerLock.unlockWrite(stamp);
+        }
 
-        return true;
+        for (int i = 0; i < count; i++) {
+            if (lastPointers[i] != NULL_POINTER) {
+                this.garbageBytes += HEADER_BYTES + this.readSize(lastPointers[i]);
+            }
+            this.touch(keys[i]);
+        }
+
+        this.afterWrite();
+    }
+
+    private long writeChunk(ByteBuffer chunk, long pointer) throws IOException {
+        chunk.flip();
+        long nextPointer = pointer + chunk.remaining();
+        writeToEnd(this.file, chunk, pointer);
+        chunk.clear();
+        return nextPointer;
     }
 
-    private void push(UUID key, ByteBuffer bytes) throws IOException {
-        long pointer = this.file.size();
-        this.file.position(pointer);
+    @Override
+    public synchronized boolean remove(UUID key) throws IOException {
+        long lastPointer = this.pointers.get(key);
+        if (lastPointer == NULL_POINTER) {
+            return false;
+        }
+
+        this.deleteIndexFile();
+        writeRecord(this.file, this.recordHeader, this.crc, key.getMostSignificantBits(), key.getLeastSignificantBits(), DEAD_FLAG, EMPTY);
 
-        this.writeToEnd(this.writeHeader(key, bytes.capacity()));
-        this.writeToEnd(bytes);
+        long stamp = this.pointerLock.writeLock();
+        try {
+            this.pointers.remove(key);
+        } finally {
+            this.pointerLock.unlockWrite(stamp);
+        }
+
+        this.garbageBytes += HEADER_BYTES + this.readSize(lastPointer) + HEADER_BYTES;
+        this.touch(key);
+        this.afterWrite();
 
-        this.pointers.put(key, pointer);
+        return true;
     }
 
-    private ByteBuffer[] writeHeader(UUID key, int size) {
-        this.uuidBytes.clear();
-        this.uuidBuffer.clear();
-        this.uuidBuffer.put(key.getMostSignificantBits()).put(key.getLeastSignificantBits());
+    /**
+     * Opens a cursor over the entries as of this call, which reads through the file sequentially in large chunks,
+     * skipping over anything that is not live.
+     */
+    @Override
+    public Cursor openCursor() throws IOException {
+        synchronized (this) {
+            return this.openCursor(new Snapshot(this.pointers));
+        }
+    }
 
-        this.sizeBytes.clear();
-        this.sizeBuffer.clear();
-        this.sizeBuffer.put(size);
+    /**
+     * Like {@link #openCursor()}, but only visiting the given keys. Their records are still read in file order.
+     */
+    @Override
+    public Cursor openCursor(Collection<UUID> keys) throws IOException {
+        synchronized (this) {
+            return this.openCursor(new Snapshot(this.pointers, keys));
+        }
+    }
 
-        return this.headerBytes;
+    private Cursor openCursor(Snapshot snapshot) throws IOException {
+        if (this.closed) {
+            throw new IOException("database is closed");
+        }
+        // a channel of our own keeps reading from the same file if compaction swaps it out in the meantime
+        FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        return new RecordCursor(channel, snapshot);
     }
 
-    private void update(long pointer, ByteBuffer bytes) throws IOException {
-        this.file.position(pointer + UUID_BYTES);
+    /**
+     * Appends a record to the end of the given file.
+     *
+     * @return the pointer to the new record
+     */
+    private static long writeRecord(FileChannel channel, ByteBuffer header, CRC32C crc, long mostSignificant, long leastSignificant, int flags, ByteBuffer bytes) throws IOException {
+        long pointer = channel.size();
+        writeToEnd(channel, encodeHeader(header, crc, mostSignificant, leastSignificant, bytes.remaining() | flags, bytes), pointer);
+        writeToEnd(channel, bytes.duplicate(), pointer + HEADER_BYTES);
+        return pointer;
+    }
 
-        this.sizeBytes.clear();
-        this.readToEnd(this.sizeBytes);
+    /**
+     * The checksum covers the key, the size field and the value.
+     */
+    private static ByteBuffer encodeHeader(ByteBuffer header, CRC32C crc, long mostSignificant, long leastSignificant, int sizeField, ByteBuffer bytes) {
+        header.clear();
+        header.putLong(mostSignificant).putLong(leastSignificant).putInt(sizeField);
 
-        int lastSize = validateSize(this.sizeBuffer.get(0));
-        int newSize = validateSize(bytes.capacity());
-        if (lastSize != newSize) {
-            long endPointer = pointer + HEADER_BYTES + lastSize;
-            this.shiftAfter(endPointer, newSize - lastSize);
-        }
+        crc.reset();
+        crc.update(header.duplicate().flip());
+        crc.update(bytes.duplicate());
+        header.putInt((int) crc.getValue());
 
-        this.sizeBytes.clear();
-        this.sizeBuffer.clear();
-        this.sizeBuffer.put(newSize);
+        return header.flip();
+    }
 
-        this.file.position(pointer + UUID_BYTES);
-        this.writeToEnd(this.sizeBytes);
-        this.writeToEnd(bytes);
+    private int readSize(long pointer) throws IOException {
+        return readSize(this.file, this.sizeBytes, pointer);
     }
 
-    private void shiftAfter(long source, int amount) throws IOException {
-        long destination = source + amount;
-        long length = this.file.size() - source;
+    private static int readSize(FileChannel channel, ByteBuffer sizeBytes, long pointer) throws IOException {
+        sizeBytes.clear();
+        readToEnd(channel, sizeBytes, pointer + UUID_BYTES);
+        return validateSize(sizeBytes.getInt(0) & ~DEAD_FLAG);
+    }
 
-        if (amount > 0) {
-            // make space for the shifted data
-            this.file.position(this.file.size());
-            this.writeToEnd(ByteBuffer.allocate(amount).order(BYTE_ORDER));
+    private void deleteIndexFile() throws IOException {
+        // the index file must never be trusted once the data file has changed after it was written
+        if (!this.indexFileDeleted) {
+            PointerIndexFile.delete(this.path);
+            this.indexFileDeleted = true;
         }
+    }
 
-        if (length > 0) {
-            moveBytes(this.file, source, destination, length);
+    private void touch(UUID key) {
+        if (this.touchedDuringCompaction != null) {
+            this.touchedDuringCompaction.add(key);
         }
+    }
 
-        if (amount < 0) {
-            // shrink the file if it got smaller
-            this.file.truncate(this.file.size() + amount);
+    private void afterWrite() throws IOException {
+        switch (this.options.syncMode()) {
+            case EVERY_WRITE -> this.file.force(false);
+            case INTERVAL -> this.unsynced = true;
+            case ON_CLOSE -> {
+            }
         }
 
-        // shift all pointers
-        for (Object2LongMap.Entry<UUID> entry : Object2LongMaps.fastIterable(this.pointers)) {
-            long pointer = entry.getLongValue();
-            if (pointer >= source) {
-                entry.setValue(pointer + amount);
-            }
+        if (!this.compactionScheduled && this.shouldCompact()) {
+            this.compactionScheduled = true;
+            this.backgroundExecutor.execute(this::compactInBackground);
         }
     }
 
-    private void writeToEnd(ByteBuffer... buffers) throws IOException {
-        for (ByteBuffer buffer : buffers) {
-            this.writeToEnd(buffer);
+    /**
+     * Syncs all writes since the last run in one go, so that a burst of writes only costs a single sync.
+     */
+    private void syncInBackground() {
+        FileChannel file;
+        synchronized (this) {
+            if (!this.unsynced || this.closed) {
+                return;
+            }
+            this.unsynced = false;
+            file = this.file;
         }
-    }
 
-    private void writeToEnd(ByteBuffer buffer) throws IOException {
-        long remaining = buffer.remaining();
-        while (remaining > 0) {
-            remaining -= this.file.write(buffer);
+        try {
+            file.force(false);
+        } catch (ClosedChannelException e) {
+            // swapped out by compaction, which syncs the new file before swapping it in
+        } catch (IOException e) {
+            LOGGER.error("Failed to sync player role database at {}", this.path, e);
+            synchronized (this) {
+                this.unsynced = true;
+            }
         }
     }
 
-    private void readToEnd(ByteBuffer buffer) throws IOException {
-        long remaining = buffer.remaining();
-        while (remaining > 0) {
-            remaining -= this.file.read(buffer);
-        }
+    private boolean shouldCompact() throws IOException {
+        return this.garbageBytes >= COMPACT_MIN_GARBAGE_BYTES
+                && this.garbageBytes >= this.file.size() * COMPACT_GARBAGE_RATIO;
     }
 
-    private static void moveBytes(FileChannel file, long source, long destination, long length) throws IOException {
-        if (source < destination) {
-            moveBytesForwards(file, source, destination, length);
-        } else {
-            moveBytesBackwards(file, source, destination, length);
+    private void compactInBackground() {
+        try {
+            this.compact(HEADER_BYTES);
+        } catch (IOException e) {
+            LOGGER.error("Failed to compact player role database at {}", this.path, e);
+        } finally {
+            synchronized (this) {
+                this.compactionScheduled = false;
+                this.notifyAll();
+            }
         }
     }
 
-    private static void moveBytesForwards(FileChannel file, long source, long destination, long length) throws IOException {
-        int bufferSize = Math.min(1024, (int) length);
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize).order(BYTE_ORDER);
+    /**
+     * Copies all live records into a new file and swaps it in place of the current one. The bulk of the copy runs
+     * without holding the lock, as records are never modified once written. Any keys that are written to in the
+     * meantime are tracked and brought up to date once the lock is taken again for the swap.
+     *
+     * @param sourceHeaderBytes the record header size of the current file, which differs from ours when upgrading
+     */
+    private void compact(int sourceHeaderBytes) throws IOException {
+        FileChannel source;
+        Snapshot snapshot;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            source = this.file;
+            snapshot = new Snapshot(this.pointers);
+            this.touchedDuringCompaction = new ObjectOpenHashSet<>();
+        }
 
-        long backPointer = source + length;
-        long offset = destination - source;
-        long remaining = length;
+        Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".compact");
+        try (FileChannel target = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writeFileHeader(target);
 
-        while (remaining > 0) {
-            int copySize = bufferSize;
-            if (remaining < bufferSize) {
-                copySize = (int) remaining;
-                buffer = ByteBuffer.allocate(copySize).order(BYTE_ORDER);
-            }
+            UuidPointerTable newPointers = new UuidPointerTable(snapshot.size);
+            ByteBuffer sizeBytes = ByteBuffer.allocate(SIZE_BYTES).order(BYTE_ORDER);
 
-            long frontPointer = backPointer - copySize;
-            int read = copyBytes(file, buffer, frontPointer, frontPointer + offset);
+            // copy in file order so that reads from the source stay sequential
+            for (int i : snapshot.sortedByPointer()) {
+                long pointer = copyRecord(source, target, sizeBytes, snapshot.pointers[i], sourceHeaderBytes);
+                newPointers.put(snapshot.mostSignificant[i], snapshot.leastSignificant[i], pointer);
+            }
 
-            remaining -= read;
-            backPointer -= read;
+            synchronized (this) {
+                Set<UUID> touched = this.touchedDuringCompaction;
+                this.touchedDuringCompaction = null;
+                if (this.closed || touched == null) {
+                    return;
+                }
+
+                long newGarbageBytes = 0;
+                for (UUID key : touched) {
+                    long copiedPointer = newPointers.remove(key);
+                    if (copiedPointer != NULL_POINTER) {
+                        newGarbageBytes += HEADER_BYTES + readSize(target, sizeBytes, copiedPointer);
+                    }
+
+                    long pointer = this.pointers.get(key);
+                    if (pointer != NULL_POINTER) {
+                        newPointers.put(key, copyRecord(this.file, target, sizeBytes, pointer, sourceHeaderBytes));
+                    } else if (copiedPointer != NULL_POINTER) {
+                        // the copy that we made must not come back when the new file is replayed
+                        writeRecord(target, this.recordHeader, this.crc, key.getMostSignificantBits(), key.getLeastSignificantBits(), DEAD_FLAG, EMPTY);
+                        newGarbageBytes += HEADER_BYTES;
+                    }
+                }
+
+                long oldSize = source.size();
+
+                target.force(true);
+                this.deleteIndexFile();
+
+                long stamp = this.pointerLock.writeLock();
+                try {
+                    this.swapFile(tempPath);
+                    this.pointers = newPointers;
+                } finally {
+                    this.pointerLock.unlockWrite(stamp);
+                }
+                this.garbageBytes = newGarbageBytes;
+                LOGGER.debug("Compacted player role database from {} to {} bytes", oldSize, this.file.size());
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
         }
     }
 
-    private static void moveBytesBackwards(FileChannel file, long source, long destination, long length) throws IOException {
-        int bufferSize = Math.min(1024, (int) length);
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize).order(BYTE_ORDER);
+    private static long copyRecord(FileChannel source, FileChannel target, ByteBuffer sizeBytes, long pointer, int sourceHeaderBytes) throws IOException {
+        if (sourceHeaderBytes != HEADER_BYTES) {
+            return upgradeRecord(source, target, pointer, sourceHeaderBytes);
+        }
 
-        long frontPointer = source;
-        long offset = destination - source;
-        long remaining = length;
+        int size = readSize(source, sizeBytes, pointer);
+        long targetPointer = target.size();
 
+        long remaining = HEADER_BYTES + size;
+        long position = pointer;
+        target.position(targetPointer);
         while (remaining > 0) {
-            int read = copyBytes(file, buffer, frontPointer, frontPointer + offset);
-            remaining -= read;
-            frontPointer += read;
+            long transferred = source.transferTo(position, remaining, target);
+            position += transferred;
+            remaining -= transferred;
         }
+
+        return targetPointer;
     }
 
-    private static int copyBytes(FileChannel file, ByteBuffer buffer, long source, long destination) throws IOException {
-        file.position(source);
+    private static long upgradeRecord(FileChannel source, FileChannel target, long pointer, int sourceHeaderBytes) throws IOException {
+        ByteBuffer sourceHeader = ByteBuffer.allocate(sourceHeaderBytes).order(BYTE_ORDER);
+        readToEnd(source, sourceHeader, pointer);
+        int size = validateSize(sourceHeader.getInt(UUID_BYTES) & ~DEAD_FLAG);
+
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        readToEnd(source, bytes, pointer + sourceHeaderBytes);
+        bytes.flip();
 
-        buffer.clear();
-        int read = file.read(buffer);
-        buffer.flip();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+        return writeRecord(target, header, new CRC32C(), sourceHeader.getLong(0), sourceHeader.getLong(8), 0, bytes);
+    }
 
-        file.position(destination);
-        file.write(buffer);
+    private void swapFile(Path newPath) throws IOException {
+        // the file must be closed before it can be replaced on all platforms
+        this.file.close();
+        try {
+            Files.move(newPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            this.file = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // slices handed out from the old mapping stay valid as the old file remains mapped until they are dropped
+            this.mapping = this.createMapping(this.file);
+        }
+    }
 
-        return read;
+    private static void writeToEnd(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readToEnd(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file at " + position);
+            }
+            position += read;
+        }
     }
 
     private static int validateSize(int size) throws IOException {
@@ -293,7 +790,160 @@ public final class Uuid2BinaryDatabase implements Closeable {
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        this.file.close();
+    public Collection<Path> files() {
+        return List.of(this.path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.closed = true;
+        }
+
+        if (this.syncTask != null) {
+            this.syncTask.cancel(false);
+        }
+        try {
+            if (this.ownsBackgroundExecutor) {
+                this.backgroundExecutor.shutdown();
+                this.backgroundExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } else {
+                this.awaitCompaction();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            this.mapping = null;
+            try {
+                this.file.force(true);
+                PointerIndexFile.write(this.path, VERSION, this.pointers, this.garbageBytes);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write player role database index for {}", this.path, e);
+            } finally {
+                this.file.close();
+            }
+        }
+    }
+
+    private synchronized void awaitCompaction() throws InterruptedException {
+        // a compaction that has not started yet returns straight away once it sees that we are closed
+        while (this.compactionScheduled) {
+            this.wait();
+        }
+    }
+
+    record PointerIndex(UuidPointerTable pointers, long garbageBytes) {
+    }
+
+    private static final class RecordCursor implements Cursor {
+        private final DataInputStream input;
+        private final Snapshot snapshot;
+        private final int[] order;
+
+        private int index;
+        private long position;
+
+        @Nullable
+        private UUID key;
+        @Nullable
+        private ByteBuffer value;
+
+        RecordCursor(FileChannel channel, Snapshot snapshot) {
+            this.input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), SCAN_BUFFER_BYTES));
+            this.snapshot = snapshot;
+            this.order = snapshot.sortedByPointer();
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (this.index >= this.order.length) {
+                this.key = null;
+                this.value = null;
+                return false;
+            }
+
+            int i = this.order[this.index++];
+            long pointer = this.snapshot.pointers[i];
+            this.input.skipNBytes(pointer - this.position + UUID_BYTES);
+            int size = validateSize(this.input.readInt());
+            this.input.skipNBytes(CHECKSUM_BYTES);
+
+            byte[] bytes = new byte[size];
+            this.input.readFully(bytes);
+            this.position = pointer + HEADER_BYTES + size;
+
+            this.key = new UUID(this.snapshot.mostSignificant[i], this.snapshot.leastSignificant[i]);
+            this.value = ByteBuffer.wrap(bytes);
+            return true;
+        }
+
+        @Override
+        public UUID key() {
+            if (this.key == null) {
+                throw new IllegalStateException("Cursor is not at an entry");
+            }
+            return this.key;
+        }
+
+        @Override
+        public ByteBuffer value() {
+            if (this.value == null) {
+                throw new IllegalStateException("Cursor is not at an entry");
+            }
+            return this.value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // also closes the channel
+            this.input.close();
+        }
+    }
+
+    private static final class Snapshot {
+        int size;
+        final long[] mostSignificant;
+        final long[] leastSignificant;
+        final long[] pointers;
+
+        Snapshot(UuidPointerTable table) {
+            this.size = table.size();
+            this.mostSignificant = new long[this.size];
+            this.leastSignificant = new long[this.size];
+            this.pointers = new long[this.size];
+
+            int[] cursor = new int[1];
+            table.forEach((mostSignificant, leastSignificant, pointer) -> {
+                int i = cursor[0]++;
+                this.mostSignificant[i] = mostSignificant;
+                this.leastSignificant[i] = leastSignificant;
+                this.pointers[i] = pointer;
+            });
+        }
+
+        Snapshot(UuidPointerTable table, Collection<UUID> keys) {
+            this.mostSignificant = new long[keys.size()];
+            this.leastSignificant = new long[keys.size()];
+            this.pointers = new long[keys.size()];
+
+            for (UUID key : keys) {
+                long pointer = table.get(key);
+                if (pointer != NULL_POINTER) {
+                    int i = this.size++;
+                    this.mostSignificant[i] = key.getMostSignificantBits();
+                    this.leastSignificant[i] = key.getLeastSignificantBits();
+                    this.pointers[i] = pointer;
+                }
+            }
+        }
+
+        int[] sortedByPointer() {
+            int[] order = new int[this.size];
+            Arrays.setAll(order, i -> i);
+            IntArrays.quickSort(order, (a, b) -> Long.compare(this.pointers[a], this.pointers[b]));
+            return order;
+        }
     }
 }
@@ -0,0 +1,220 @@
+package com.lovetropics.perms.store.db;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash table from UUID to a non-negative file pointer. Keys are stored as their two halves in
+ * parallel {@code long} arrays next to the values, so that no object is kept per entry.
+ * <p>
+ * Collisions are resolved by linear probing, and removal shifts later entries back into the freed slot rather than
+ * leaving a tombstone. An empty slot is one holding {@link #NULL_POINTER}.
+ * <p>
+ * This is not thread-safe, but it may be read without a lock while it is being modified, as long as the result of
+ * such a read is discarded if a write did happen: a read always terminates, and never throws.
+ */
+final class UuidPointerTable {
+    static final long NULL_POINTER = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75F;
+
+    private volatile Slots slots;
+    private int size;
+
+    UuidPointerTable() {
+        this(0);
+    }
+
+    UuidPointerTable(int expectedSize) {
+        this.slots = new Slots(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, (int) Math.ceil(size / LOAD_FACTOR)) - 1) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("too many entries (" + size + ")");
+        }
+        return capacity;
+    }
+
+    private static int hash(long mostSignificant, long leastSignificant) {
+        long hash = mostSignificant ^ leastSignificant;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    long get(UUID key) {
+        return this.get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    long get(long mostSignificant, long leastSignificant) {
+        Slots slots = this.slots;
+        int mask = slots.mask;
+        int index = hash(mostSignificant, leastSignificant) & mask;
+        for (int probe = 0; probe <= mask; probe++) {
+            long pointer = slots.pointers[index];
+            if (pointer == NULL_POINTER) {
+                return NULL_POINTER;
+            }
+            if (slots.mostSignificant[index] == mostSignificant && slots.leastSignificant[index] == leastSignificant) {
+                return pointer;
+            }
+            index = (index + 1) & mask;
+        }
+        return NULL_POINTER;
+    }
+
+    /**
+     * @return the pointer previously stored for the key, or {@link #NULL_POINTER}
+     */
+    long put(UUID key, long pointer) {
+        return this.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), pointer);
+    }
+
+    long put(long mostSignificant, long leastSignificant, long pointer) {
+        if (pointer < 0) {
+            throw new IllegalArgumentException("pointer must not be negative (" + pointer + ")");
+        }
+
+        Slots slots = this.slots;
+        int mask = slots.mask;
+        int index = hash(mostSignificant, leastSignificant) & mask;
+        while (true) {
+            long lastPointer = slots.pointers[index];
+            if (lastPointer == NULL_POINTER) {
+                break;
+            }
+            if (slots.mostSignificant[index] == mostSignificant && slots.leastSignificant[index] == leastSignificant) {
+                slots.pointers[index] = pointer;
+                return lastPointer;
+            }
+            index = (index + 1) & mask;
+        }
+
+        // the pointer is written last so that a concurrent reader never sees a new slot with a partial key
+        slots.mostSignificant[index] = mostSignificant;
+        slots.leastSignificant[index] = leastSignificant;
+        slots.pointers[index] = pointer;
+
+        if (++this.size > slots.threshold) {
+            this.resize(slots.capacity() * 2);
+        }
+
+        return NULL_POINTER;
+    }
+
+    /**
+     * @return the pointer that was stored for the key, or {@link #NULL_POINTER}
+     */
+    long remove(UUID key) {
+        return this.remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    long remove(long mostSignificant, long leastSignificant) {
+        Slots slots = this.slots;
+        int mask = slots.mask;
+        int index = hash(mostSignificant, leastSignificant) & mask;
+        while (true) {
+            long pointer = slots.pointers[index];
+            if (pointer == NULL_POINTER) {
+                return NULL_POINTER;
+            }
+            if (slots.mostSignificant[index] == mostSignificant && slots.leastSignificant[index] == leastSignificant) {
+                this.shiftBack(slots, index);
+                this.size--;
+                return pointer;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void shiftBack(Slots slots, int freeIndex) {
+        int mask = slots.mask;
+        int index = freeIndex;
+        while (true) {
+            index = (index + 1) & mask;
+            long pointer = slots.pointers[index];
+            if (pointer == NULL_POINTER) {
+                break;
+            }
+
+            // an entry can only move back if the free slot is not before its ideal slot in probe order
+            int idealIndex = hash(slots.mostSignificant[index], slots.leastSignificant[index]) & mask;
+            if (((index - idealIndex) & mask) >= ((index - freeIndex) & mask)) {
+                slots.mostSignificant[freeIndex] = slots.mostSignificant[index];
+                slots.leastSignificant[freeIndex] = slots.leastSignificant[index];
+                slots.pointers[freeIndex] = pointer;
+                freeIndex = index;
+            }
+        }
+        slots.pointers[freeIndex] = NULL_POINTER;
+    }
+
+    private void resize(int capacity) {
+        Slots oldSlots = this.slots;
+        Slots newSlots = new Slots(capacity);
+        int mask = newSlots.mask;
+
+        for (int i = 0; i < oldSlots.pointers.length; i++) {
+            long pointer = oldSlots.pointers[i];
+            if (pointer == NULL_POINTER) {
+                continue;
+            }
+
+            long mostSignificant = oldSlots.mostSignificant[i];
+            long leastSignificant = oldSlots.leastSignificant[i];
+            int index = hash(mostSignificant, leastSignificant) & mask;
+            while (newSlots.pointers[index] != NULL_POINTER) {
+                index = (index + 1) & mask;
+            }
+
+            newSlots.mostSignificant[index] = mostSignificant;
+            newSlots.leastSignificant[index] = leastSignificant;
+            newSlots.pointers[index] = pointer;
+        }
+
+        this.slots = newSlots;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void forEach(Visitor visitor) {
+        Slots slots = this.slots;
+        for (int i = 0; i < slots.pointers.length; i++) {
+            long pointer = slots.pointers[i];
+            if (pointer != NULL_POINTER) {
+                visitor.accept(slots.mostSignificant[i], slots.leastSignificant[i], pointer);
+            }
+        }
+    }
+
+    interface Visitor {
+        void accept(long mostSignificant, long leastSignificant, long pointer);
+    }
+
+    private static final class Slots {
+        final long[] mostSignificant;
+        final long[] leastSignificant;
+        final long[] pointers;
+        final int mask;
+        final int threshold;
+
+        Slots(int capacity) {
+            this.mostSignificant = new long[capacity];
+            this.leastSignificant = new long[capacity];
+            this.pointers = new long[capacity];
+            Arrays.fill(this.pointers, NULL_POINTER);
+            this.mask = capacity - 1;
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        int capacity() {
+            return this.pointers.length;
+        }
+    }
+}
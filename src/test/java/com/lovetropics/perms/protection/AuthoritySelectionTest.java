@@ -0,0 +1,242 @@
+package com.lovetropics.perms.protection;
+
+import com.lovetropics.lib.BlockBox;
+import com.lovetropics.lib.permission.PermissionResult;
+import com.lovetropics.perms.protection.authority.Authority;
+import com.lovetropics.perms.protection.authority.BuiltinAuthority;
+import com.lovetropics.perms.protection.authority.UserAuthority;
+import com.lovetropics.perms.protection.authority.map.IndexedAuthorityMap;
+import com.lovetropics.perms.protection.authority.shape.AuthorityShape;
+import com.lovetropics.perms.protection.authority.shape.BoxShape;
+import com.lovetropics.perms.protection.authority.shape.TransformedShape;
+import com.lovetropics.perms.protection.authority.shape.UnionShape;
+import com.lovetropics.perms.protection.authority.shape.UniverseShape;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.math.transform.AffineTransform;
+import com.sk89q.worldedit.math.transform.CombinedTransform;
+import com.sk89q.worldedit.math.transform.Transform;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthoritySelectionTest {
+    static final ProtectionRule[] RULES = {ProtectionRule.BREAK, ProtectionRule.PLACE, ProtectionRule.INTERACT, ProtectionRule.ATTACK};
+
+    private static final int RANGE = 100;
+    private static final int HEIGHT = 40;
+
+    @Test
+    void selectionMatchesLinearScan() {
+        Random random = new Random(1234);
+        List<Authority> authorities = randomAuthorities(random, 60);
+        IndexedAuthorityMap<Authority> index = index(authorities);
+
+        for (int i = 0; i < 20_000; i++) {
+            EventSource source = randomSource(random);
+            ProtectionRule rule = RULES[random.nextInt(RULES.length)];
+
+            Authority[] selected = index.selectByDimension(source, rule);
+            assertSorted(selected);
+            assertEquals(linearTest(authorities, source, rule), linearTest(Arrays.asList(selected), source, rule), () -> source.getDimension() + " " + source.getPos() + " " + rule);
+        }
+    }
+
+    @Test
+    void selectionFollowsChanges() {
+        Random random = new Random(4321);
+        List<Authority> authorities = randomAuthorities(random, 40);
+        IndexedAuthorityMap<Authority> index = index(authorities);
+
+        for (int round = 0; round < 200; round++) {
+            // change one authority, which must drop every snapshot that included it
+            int change = random.nextInt(3);
+            if (change == 0) {
+                Authority authority = randomUserAuthority(random, "added" + round);
+                assertTrue(index.add(authority));
+                authorities.add(authority);
+            } else if (change == 1) {
+                Authority authority = authorities.get(random.nextInt(authorities.size()));
+                if (authority instanceof UserAuthority userAuthority) {
+                    Authority replacement = userAuthority
+                            .withRule(RULES[random.nextInt(RULES.length)], randomResult(random))
+                            .withLevel(random.nextInt(7) - 3);
+                    assertTrue(index.replace(authority, replacement));
+                    authorities.set(authorities.indexOf(authority), replacement);
+                }
+            } else {
+                Authority authority = authorities.get(random.nextInt(authorities.size()));
+                if (authority instanceof UserAuthority) {
+                    assertSame(authority, index.remove(authority.key()));
+                    authorities.remove(authority);
+                }
+            }
+            authorities.sort(null);
+
+            for (int i = 0; i < 200; i++) {
+                EventSource source = randomSource(random);
+                ProtectionRule rule = RULES[random.nextInt(RULES.length)];
+                assertEquals(linearTest(authorities, source, rule), linearTest(Arrays.asList(index.selectByDimension(source, rule)), source, rule));
+            }
+        }
+    }
+
+    @Test
+    void transformedBoundsContainShape() {
+        Random random = new Random(5678);
+        for (int i = 0; i < 200; i++) {
+            BlockPos min = new BlockPos(random.nextInt(20) - 10, random.nextInt(20) - 10, random.nextInt(20) - 10);
+            BlockBox box = BlockBox.of(min, min.offset(random.nextInt(6), random.nextInt(6), random.nextInt(6)));
+            TransformedShape shape = new TransformedShape(new BoxShape(Level.OVERWORLD, box), randomAffineTransform(random));
+
+            BlockBox bounds = shape.getBounds(Level.OVERWORLD);
+            assertNotNull(bounds);
+            for (int x = bounds.min().getX() - 4; x <= bounds.max().getX() + 4; x++) {
+                for (int y = bounds.min().getY() - 4; y <= bounds.max().getY() + 4; y++) {
+                    for (int z = bounds.min().getZ() - 4; z <= bounds.max().getZ() + 4; z++) {
+                        BlockPos pos = new BlockPos(x, y, z);
+                        if (shape.accepts(EventSource.at(Level.OVERWORLD, pos))) {
+                            assertTrue(bounds.contains(pos), () -> pos + " is outside of " + bounds);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void unknownBoundsStayUnbounded() {
+        BoxShape box = new BoxShape(Level.OVERWORLD, BlockBox.of(BlockPos.ZERO, new BlockPos(4, 4, 4)));
+
+        assertSame(AuthorityShape.UNBOUNDED, new TransformedShape(box, new BendTransform(0.25)).getBounds(Level.OVERWORLD));
+        assertSame(AuthorityShape.UNBOUNDED, new TransformedShape(box, new CombinedTransform(new AffineTransform().translate(1, 2, 3), new BendTransform(0.25))).getBounds(Level.OVERWORLD));
+        assertTrue(AuthorityShape.isUnbounded(new UnionShape(box, UniverseShape.INSTANCE).getBounds(Level.OVERWORLD)));
+        assertTrue(AuthorityShape.isUnbounded(new TransformedShape(new UnionShape(box, UniverseShape.INSTANCE), new AffineTransform().translate(5, 0, 5)).getBounds(Level.OVERWORLD)));
+    }
+
+    /**
+     * @return the builtin universe and nether authorities with some rules, along with randomly shaped user authorities
+     */
+    static List<Authority> randomAuthorities(Random random, int count) {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(BuiltinAuthority.universe().withRule(ProtectionRule.BREAK, PermissionResult.DENY));
+        authorities.add(BuiltinAuthority.dimension(Level.NETHER).withRule(ProtectionRule.PLACE, PermissionResult.ALLOW));
+
+        for (int i = 0; i < count; i++) {
+            authorities.add(randomUserAuthority(random, "authority" + i));
+        }
+
+        authorities.sort(null);
+        return authorities;
+    }
+
+    private static UserAuthority randomUserAuthority(Random random, String key) {
+        UserAuthority authority = UserAuthority.create(key)
+                .addShape("shape", randomShape(random))
+                .withLevel(random.nextInt(7) - 3);
+        int ruleCount = random.nextInt(3) + 1;
+        for (int i = 0; i < ruleCount; i++) {
+            authority = authority.withRule(RULES[random.nextInt(RULES.length)], randomResult(random));
+        }
+        return authority;
+    }
+
+    private static PermissionResult randomResult(Random random) {
+        return random.nextBoolean() ? PermissionResult.ALLOW : PermissionResult.DENY;
+    }
+
+    private static AuthorityShape randomShape(Random random) {
+        ResourceKey<Level> dimension = random.nextInt(4) == 0 ? Level.NETHER : Level.OVERWORLD;
+        BoxShape box = new BoxShape(dimension, randomBox(random));
+        return switch (random.nextInt(6)) {
+            case 0 -> new TransformedShape(box, randomAffineTransform(random));
+            case 1 -> new TransformedShape(box, new BendTransform(random.nextDouble() - 0.5));
+            case 2 -> new UnionShape(box, new BoxShape(Level.NETHER, randomBox(random)));
+            default -> box;
+        };
+    }
+
+    private static BlockBox randomBox(Random random) {
+        BlockPos min = new BlockPos(random.nextInt(2 * RANGE) - RANGE, random.nextInt(2 * HEIGHT) - HEIGHT, random.nextInt(2 * RANGE) - RANGE);
+        // mostly small boxes, with the occasional box that spans many chunks
+        int size = random.nextInt(10) == 0 ? 200 : 24;
+        return BlockBox.of(min, min.offset(random.nextInt(size), random.nextInt(HEIGHT), random.nextInt(size)));
+    }
+
+    private static Transform randomAffineTransform(Random random) {
+        return new AffineTransform()
+                .rotateY(random.nextInt(360))
+                .scale(0.5 + random.nextDouble())
+                .translate(random.nextInt(20) - 10, random.nextInt(6) - 3, random.nextInt(20) - 10);
+    }
+
+    static IndexedAuthorityMap<Authority> index(List<Authority> authorities) {
+        IndexedAuthorityMap<Authority> index = new IndexedAuthorityMap<>();
+        for (Authority authority : authorities) {
+            index.add(authority);
+        }
+        index.addDimensionIndex(Level.OVERWORLD);
+        index.addDimensionIndex(Level.NETHER);
+        return index;
+    }
+
+    static EventSource randomSource(Random random) {
+        ResourceKey<Level> dimension = random.nextInt(3) == 0 ? Level.NETHER : Level.OVERWORLD;
+        BlockPos pos = new BlockPos(random.nextInt(2 * RANGE + 64) - RANGE - 32, random.nextInt(2 * HEIGHT + 32) - HEIGHT - 16, random.nextInt(2 * RANGE + 64) - RANGE - 32);
+        return EventSource.at(dimension, pos);
+    }
+
+    /**
+     * Tests every authority in priority order, as was done before authorities were indexed by position.
+     */
+    static PermissionResult linearTest(List<Authority> authorities, EventSource source, ProtectionRule rule) {
+        for (Authority authority : authorities) {
+            PermissionResult result = authority.rules().test(rule);
+            if (result.isTerminator() && authority.eventFilter().accepts(source)) {
+                return result;
+            }
+        }
+        return PermissionResult.PASS;
+    }
+
+    private static void assertSorted(Authority[] authorities) {
+        for (int i = 1; i < authorities.length; i++) {
+            assertTrue(authorities[i - 1].compareTo(authorities[i]) < 0, "Authorities out of priority order");
+        }
+    }
+
+    /**
+     * Shears along x by the square of y, which no affine transform can express.
+     */
+    record BendTransform(double factor) implements Transform {
+        @Override
+        public boolean isIdentity() {
+            return this.factor == 0.0;
+        }
+
+        @Override
+        public Vector3 apply(Vector3 input) {
+            return input.withX(input.getX() + this.factor * input.getY() * input.getY());
+        }
+
+        @Override
+        public Transform inverse() {
+            return new BendTransform(-this.factor);
+        }
+
+        @Override
+        public Transform combine(Transform other) {
+            return new CombinedTransform(this, other);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.lovetropics.perms.protection;
+
+import com.google.gson.JsonElement;
+import com.lovetropics.lib.permission.PermissionResult;
+import com.mojang.serialization.JsonOps;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProtectionRuleMapTest {
+    private static final PermissionResult[] RESULTS = {PermissionResult.ALLOW, PermissionResult.DENY, PermissionResult.PASS};
+
+    @Test
+    void matchesHashMap() {
+        Random random = new Random(1234);
+        int ruleCount = ProtectionRule.keySet().size();
+
+        ProtectionRuleMap rules = ProtectionRuleMap.EMPTY;
+        Map<ProtectionRule, PermissionResult> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            ProtectionRule rule = ProtectionRule.byId(random.nextInt(ruleCount));
+            PermissionResult result = RESULTS[random.nextInt(RESULTS.length)];
+
+            rules = rules.with(rule, result);
+            if (result.isTerminator()) {
+                expected.put(rule, result);
+            } else {
+                expected.remove(rule);
+            }
+
+            assertEquals(expected.keySet(), rules.keySet());
+            assertEquals(expected.isEmpty(), rules.isEmpty());
+            for (int id = 0; id < ruleCount; id++) {
+                ProtectionRule tested = ProtectionRule.byId(id);
+                assertEquals(expected.getOrDefault(tested, PermissionResult.PASS), rules.test(tested));
+            }
+
+            long mask = random.nextLong() & random.nextLong();
+            boolean decidesAny = false;
+            for (ProtectionRule decided : expected.keySet()) {
+                decidesAny |= (mask & 1L << decided.id()) != 0;
+            }
+            assertEquals(decidesAny, rules.decidesAny(mask));
+        }
+    }
+
+    @Test
+    void unchangedRuleKeepsMap() {
+        ProtectionRuleMap rules = ProtectionRuleMap.EMPTY.with(ProtectionRule.BREAK, PermissionResult.DENY);
+        assertSame(rules, rules.with(ProtectionRule.BREAK, PermissionResult.DENY));
+        assertSame(ProtectionRuleMap.EMPTY, ProtectionRuleMap.EMPTY.with(ProtectionRule.PLACE, PermissionResult.PASS));
+
+        assertTrue(rules.decidesAny(1L << ProtectionRule.BREAK.id()));
+        assertFalse(rules.decidesAny(1L << ProtectionRule.PLACE.id()));
+        assertTrue(rules.with(ProtectionRule.BREAK, PermissionResult.PASS).isEmpty());
+    }
+
+    @Test
+    void codecRoundTrip() {
+        ProtectionRuleMap rules = ProtectionRuleMap.EMPTY
+                .with(ProtectionRule.BREAK, PermissionResult.DENY)
+                .with(ProtectionRule.PLACE, PermissionResult.ALLOW)
+                .with(ProtectionRule.CRAFT, PermissionResult.DENY);
+
+        JsonElement json = ProtectionRuleMap.CODEC.encodeStart(JsonOps.INSTANCE, rules).getOrThrow();
+        ProtectionRuleMap decoded = ProtectionRuleMap.CODEC.parse(JsonOps.INSTANCE, json).getOrThrow();
+
+        assertEquals(rules.keySet(), decoded.keySet());
+        for (ProtectionRule rule : rules.keySet()) {
+            assertEquals(rules.test(rule), decoded.test(rule));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.lovetropics.perms.protection;
+
+import com.lovetropics.lib.BlockBox;
+import com.lovetropics.lib.permission.PermissionResult;
+import com.lovetropics.perms.protection.authority.Authority;
+import com.lovetropics.perms.protection.authority.UserAuthority;
+import com.lovetropics.perms.protection.authority.map.IndexedAuthorityMap;
+import com.lovetropics.perms.protection.authority.shape.BoxShape;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.lovetropics.perms.protection.AuthoritySelectionTest.RULES;
+import static com.lovetropics.perms.protection.AuthoritySelectionTest.index;
+import static com.lovetropics.perms.protection.AuthoritySelectionTest.linearTest;
+import static com.lovetropics.perms.protection.AuthoritySelectionTest.randomAuthorities;
+import static com.lovetropics.perms.protection.AuthoritySelectionTest.randomSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProtectionSectionCacheTest {
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(1234);
+        List<Authority> authorities = randomAuthorities(random, 60);
+        ProtectionSectionCache cache = new ProtectionSectionCache(index(authorities));
+
+        for (int i = 0; i < 50_000; i++) {
+            EventSource source = randomSource(random);
+            ProtectionRule rule = RULES[random.nextInt(RULES.length)];
+
+            PermissionResult result = cache.get(source.getDimension(), source.getPos(), rule).test(source);
+            assertEquals(linearTest(authorities, source, rule), result, () -> source.getDimension() + " " + source.getPos() + " " + rule);
+        }
+
+        ProtectionSectionCache.Stats stats = cache.stats();
+        assertTrue(stats.hits() > 0, "Sections were never reused");
+        assertEquals(50_000, stats.hits() + stats.misses());
+    }
+
+    @Test
+    void combinedMatchesLinearScan() {
+        Random random = new Random(2468);
+        List<Authority> authorities = randomAuthorities(random, 60);
+        IndexedAuthorityMap<Authority> index = index(authorities);
+        ProtectionSectionCache cache = new ProtectionSectionCache(index);
+
+        for (int i = 0; i < 20_000; i++) {
+            EventSource source = randomSource(random);
+            ProtectionRule[] rules = randomRules(random);
+
+            PermissionResult[] results = cache.getCombined(source.getDimension(), source.getPos()).test(source, rules);
+            assertLinearResults(authorities, source, rules, results);
+
+            // and without a position, as events for a whole dimension are tested
+            EventSource dimensionSource = EventSource.allOf(source.getDimension());
+            PermissionResult[] dimensionResults = ProtectionSectionCache.CombinedResolution.of(index.selectAllByDimension(dimensionSource)).test(dimensionSource, rules);
+            assertLinearResults(authorities, dimensionSource, rules, dimensionResults);
+
+            ProtectionResults combined = new ProtectionResults(rules, results);
+            boolean denies = false;
+            for (ProtectionRule rule : rules) {
+                PermissionResult result = linearTest(authorities, source, rule);
+                if (result.isTerminator()) {
+                    denies = result.isDenied();
+                    break;
+                }
+            }
+            assertEquals(denies, combined.denies(rules));
+        }
+    }
+
+    @Test
+    void resolvesAgainAfterClear() {
+        BlockPos pos = new BlockPos(8, 8, 8);
+        EventSource source = EventSource.at(Level.OVERWORLD, pos);
+
+        IndexedAuthorityMap<Authority> authorities = new IndexedAuthorityMap<>();
+        authorities.addDimensionIndex(Level.OVERWORLD);
+        ProtectionSectionCache cache = new ProtectionSectionCache(authorities);
+        assertEquals(PermissionResult.PASS, cache.get(Level.OVERWORLD, pos, ProtectionRule.BREAK).test(source));
+
+        // a box that only partly covers the section, so that its filter is kept
+        authorities.add(UserAuthority.create("spawn")
+                .addShape("box", new BoxShape(Level.OVERWORLD, BlockBox.of(new BlockPos(4, 4, 4), new BlockPos(10, 10, 10))))
+                .withRule(ProtectionRule.BREAK, PermissionResult.DENY));
+        cache.clear();
+
+        assertEquals(PermissionResult.DENY, cache.get(Level.OVERWORLD, pos, ProtectionRule.BREAK).test(source));
+        assertEquals(PermissionResult.PASS, cache.get(Level.OVERWORLD, pos, ProtectionRule.BREAK).test(EventSource.at(Level.OVERWORLD, new BlockPos(2, 2, 2))));
+        assertEquals(PermissionResult.PASS, cache.get(Level.OVERWORLD, pos, ProtectionRule.PLACE).test(source));
+    }
+
+    /**
+     * @return between one and all of the tested rules, in a random order
+     */
+    private static ProtectionRule[] randomRules(Random random) {
+        List<ProtectionRule> rules = new ArrayList<>(List.of(RULES));
+        Collections.shuffle(rules, random);
+        return rules.subList(0, random.nextInt(rules.size()) + 1).toArray(new ProtectionRule[0]);
+    }
+
+    private static void assertLinearResults(List<Authority> authorities, EventSource source, ProtectionRule[] rules, PermissionResult[] results) {
+        assertEquals(rules.length, results.length);
+        for (int i = 0; i < rules.length; i++) {
+            ProtectionRule rule = rules[i];
+            assertEquals(linearTest(authorities, source, rule), results[i], () -> source.getDimension() + " " + source.getPos() + " " + rule);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.lovetropics.perms.store;
+
+import com.lovetropics.lib.permission.role.Role;
+import com.lovetropics.perms.config.RolesConfig;
+import com.lovetropics.perms.override.RoleOverrideMap;
+import com.lovetropics.perms.role.SimpleRole;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerRoleSetTest {
+    @Test
+    void addsAndRemovesRoles() {
+        RolesConfig config = config("admin", "builder", "guest");
+        Role admin = config.get("admin");
+        Role guest = config.get("guest");
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        assertTrue(roles.isEmpty());
+        assertTrue(roles.has(config.everyone()));
+        assertFalse(roles.has(admin));
+
+        assertTrue(roles.add(admin));
+        assertFalse(roles.add(admin));
+        assertTrue(roles.add(guest));
+        assertTrue(roles.isDirty());
+        assertTrue(roles.has(admin));
+        assertTrue(roles.has(guest));
+        assertFalse(roles.has(config.get("builder")));
+
+        assertTrue(roles.remove(admin));
+        assertFalse(roles.remove(admin));
+        assertFalse(roles.has(admin));
+        assertTrue(roles.has(guest));
+
+        assertTrue(roles.remove(guest));
+        assertTrue(roles.isEmpty());
+
+        // everyone is always held, and can be neither added nor removed
+        assertFalse(roles.add(config.everyone()));
+        assertFalse(roles.remove(config.everyone()));
+        assertTrue(roles.has(config.everyone()));
+    }
+
+    @Test
+    void holdsRolesPastFirstWord() {
+        String[] ids = new String[150];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "role" + i;
+        }
+        RolesConfig config = config(ids);
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        for (int i = 0; i < ids.length; i += 7) {
+            assertTrue(roles.add(config.get(ids[i])));
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i % 7 == 0, roles.has(config.get(ids[i])), ids[i]);
+        }
+        assertEquals(expectedOrder(config, roles), list(roles));
+    }
+
+    @Test
+    void ignoresRolesFromOtherConfigs() {
+        RolesConfig config = config("admin", "builder");
+        RolesConfig other = config("admin", "builder");
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        roles.add(config.get("admin"));
+
+        // equal to our own admin role by id and index, but not part of this config
+        assertFalse(roles.has(other.get("admin")));
+        assertFalse(roles.has(SimpleRole.empty("admin")));
+        assertTrue(roles.has(config.get("admin")));
+    }
+
+    @Test
+    void iteratesByPriority() {
+        RolesConfig config = config("admin", "builder", "guest", "moderator");
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        roles.add(config.get("guest"));
+        roles.add(config.get("admin"));
+        roles.add(config.get("moderator"));
+
+        List<Role> expected = expectedOrder(config, roles);
+        assertEquals(3, expected.size());
+        assertEquals(expected, list(roles));
+
+        List<Role> stream = new ArrayList<>(expected);
+        stream.add(config.everyone());
+        assertEquals(stream, roles.stream().toList());
+    }
+
+    @Test
+    void serializeRoundTrip() {
+        RolesConfig config = config("admin", "builder", "guest");
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        roles.add(config.get("builder"));
+        roles.add(config.get("admin"));
+
+        ListTag list = roles.serialize();
+        assertEquals(expectedOrder(config, roles).stream().map(Role::id).toList(), ids(list));
+
+        PlayerRoleSet loaded = new PlayerRoleSet(config, null);
+        loaded.deserialize(list);
+        assertEquals(list(roles), list(loaded));
+        assertFalse(loaded.isDirty());
+    }
+
+    @Test
+    void deserializeDropsUnknownRoles() {
+        RolesConfig config = config("admin", "builder");
+
+        ListTag list = new ListTag();
+        list.add(StringTag.valueOf("admin"));
+        list.add(StringTag.valueOf("removed"));
+        list.add(StringTag.valueOf(Role.EVERYONE));
+
+        PlayerRoleSet roles = new PlayerRoleSet(config, null);
+        roles.deserialize(list);
+        assertEquals(List.of(config.get("admin")), list(roles));
+        assertTrue(roles.isDirty());
+    }
+
+    @Test
+    void remapsIntoReorderedConfig() {
+        RolesConfig previous = config("admin", "builder", "guest", "moderator");
+        RolesConfig config = config("moderator", "guest", "admin", "builder");
+
+        PlayerRoleSet roles = new PlayerRoleSet(previous, null);
+        roles.add(previous.get("admin"));
+        roles.add(previous.get("guest"));
+        roles.setDirty(false);
+
+        PlayerRoleSet remapped = roles.reloadInto(config, config.remapIndicesFrom(previous));
+        assertEquals(config, remapped.config());
+        assertTrue(remapped.has(config.get("admin")));
+        assertTrue(remapped.has(config.get("guest")));
+        assertFalse(remapped.has(config.get("builder")));
+        assertFalse(remapped.has(config.get("moderator")));
+        assertEquals(expectedOrder(config, remapped), list(remapped));
+        assertFalse(remapped.isDirty());
+
+        // the old set is left as it was
+        assertTrue(roles.has(previous.get("admin")));
+        assertEquals(previous, roles.config());
+    }
+
+    @Test
+    void remapDropsRemovedRoles() {
+        RolesConfig previous = config("admin", "builder", "guest");
+        RolesConfig config = config("guest", "admin");
+
+        PlayerRoleSet roles = new PlayerRoleSet(previous, null);
+        roles.add(previous.get("builder"));
+        roles.add(previous.get("guest"));
+        roles.setDirty(false);
+
+        PlayerRoleSet remapped = new PlayerRoleSet(config, null);
+        remapped.reloadFrom(roles);
+        assertEquals(List.of(config.get("guest")), list(remapped));
+        assertTrue(remapped.isDirty());
+
+        PlayerRoleSet copy = new PlayerRoleSet(config, null);
+        copy.copyFrom(roles);
+        assertEquals(List.of(config.get("guest")), list(copy));
+        assertTrue(copy.isDirty());
+    }
+
+    @Test
+    void remapMatchesDeserialize() {
+        String[] ids = new String[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "role" + i;
+        }
+        RolesConfig previous = config(ids);
+
+        // reversed, and without every third role
+        List<String> kept = new ArrayList<>();
+        for (int i = ids.length - 1; i >= 0; i--) {
+            if (i % 3 != 0) {
+                kept.add(ids[i]);
+            }
+        }
+        RolesConfig config = config(kept.toArray(String[]::new));
+
+        PlayerRoleSet roles = new PlayerRoleSet(previous, null);
+        for (int i = 0; i < ids.length; i += 2) {
+            roles.add(previous.get(ids[i]));
+        }
+
+        PlayerRoleSet remapped = roles.reloadInto(config, config.remapIndicesFrom(previous));
+        PlayerRoleSet loaded = new PlayerRoleSet(config, null);
+        loaded.deserialize(roles.serialize());
+
+        assertEquals(list(loaded), list(remapped));
+        assertEquals(ids(loaded.serialize()), ids(remapped.serialize()));
+    }
+
+    /**
+     * @param ids the roles to create, which are given indices in order from 1
+     */
+    static RolesConfig config(String... ids) {
+        List<Role> roles = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            roles.add(new SimpleRole(ids[i], RoleOverrideMap.EMPTY, i + 1));
+        }
+        return RolesConfig.of(roles, SimpleRole.empty(Role.EVERYONE));
+    }
+
+    static List<Role> expectedOrder(RolesConfig config, PlayerRoleSet roles) {
+        List<Role> expected = new ArrayList<>();
+        for (int rank = 0; rank < config.size(); rank++) {
+            Role role = config.byPriority(rank);
+            if (roles.has(role)) {
+                expected.add(role);
+            }
+        }
+        return expected;
+    }
+
+    static List<Role> list(PlayerRoleSet roles) {
+        List<Role> list = new ArrayList<>();
+        roles.forEach(list::add);
+        return list;
+    }
+
+    static List<String> ids(ListTag list) {
+        List<String> ids = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            ids.add(list.getString(i));
+        }
+        return ids;
+    }
+}
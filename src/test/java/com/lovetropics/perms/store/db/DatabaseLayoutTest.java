@@ -0,0 +1,84 @@
+package com.lovetropics.perms.store.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.assertValue;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.keys;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.value;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseLayoutTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void migratesBetweenShardCounts() throws IOException {
+        Path path = this.directory.resolve("roles");
+        Map<UUID, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            entries.put(UUID.randomUUID(), i);
+        }
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 1, DatabaseOptions.DEFAULT)) {
+            for (Map.Entry<UUID, Integer> entry : entries.entrySet()) {
+                database.put(entry.getKey(), value(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 4, DatabaseOptions.DEFAULT)) {
+            assertEntries(database, entries);
+        }
+        assertFalse(Files.exists(path));
+        assertTrue(Files.isDirectory(this.directory.resolve("roles.shards-4")));
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 3, DatabaseOptions.DEFAULT)) {
+            assertEntries(database, entries);
+        }
+        assertFalse(Files.exists(this.directory.resolve("roles.shards-4")));
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 1, DatabaseOptions.DEFAULT)) {
+            assertEntries(database, entries);
+        }
+        assertTrue(Files.isRegularFile(path));
+        assertFalse(Files.exists(this.directory.resolve("roles.shards-3")));
+    }
+
+    @Test
+    void restartsInterruptedMigration() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID key = UUID.randomUUID();
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 1, DatabaseOptions.DEFAULT)) {
+            database.put(key, value(key, 1));
+        }
+
+        // left behind by a migration that never finished
+        Path migratingPath = this.directory.resolve("roles.shards-2.migrating");
+        try (BinaryDatabase database = ShardedUuid2BinaryDatabase.open(migratingPath, 2, DatabaseOptions.DEFAULT)) {
+            UUID partial = UUID.randomUUID();
+            database.put(partial, value(partial, 1));
+        }
+
+        try (BinaryDatabase database = DatabaseLayout.open(path, 2, DatabaseOptions.DEFAULT)) {
+            assertEntries(database, Map.of(key, 1));
+        }
+        assertFalse(Files.exists(migratingPath));
+    }
+
+    private static void assertEntries(BinaryDatabase database, Map<UUID, Integer> entries) throws IOException {
+        for (Map.Entry<UUID, Integer> entry : entries.entrySet()) {
+            assertValue(database.get(entry.getKey()), entry.getKey(), entry.getValue());
+        }
+        assertEquals(entries.keySet(), keys(database));
+    }
+}
@@ -0,0 +1,102 @@
+package com.lovetropics.perms.store.db;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlayerRoleDatabaseTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void exportsWhatWasImported() throws IOException {
+        Path path = this.directory.resolve("roles");
+        Map<UUID, List<String>> roles = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            roles.put(UUID.randomUUID(), i % 2 == 0 ? List.of("admin") : List.of("builder", "guest"));
+        }
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            assertEquals(roles.size(), database.importFrom(new BufferedReader(new StringReader(toJson(roles)))));
+            assertEquals(roles, export(database));
+        }
+
+        // and once more after moving to another layout
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 4, DatabaseOptions.DEFAULT)) {
+            assertEquals(roles, export(database));
+        }
+    }
+
+    @Test
+    void importReplacesAndRemovesRoles() throws IOException {
+        UUID replaced = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(this.directory.resolve("roles"), 1, DatabaseOptions.DEFAULT)) {
+            database.importFrom(new BufferedReader(new StringReader(toJson(Map.of(
+                    replaced, List.of("admin"),
+                    removed, List.of("admin"),
+                    kept, List.of("guest")
+            )))));
+            database.importFrom(new BufferedReader(new StringReader(toJson(Map.of(
+                    replaced, List.of("builder"),
+                    removed, List.of()
+            )))));
+
+            assertEquals(Map.of(replaced, List.of("builder"), kept, List.of("guest")), export(database));
+        }
+    }
+
+    @Test
+    void rejectsMalformedImport() throws IOException {
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(this.directory.resolve("roles"), 1, DatabaseOptions.DEFAULT)) {
+            IOException exception = assertThrows(IOException.class, () -> database.importFrom(new BufferedReader(new StringReader("\n{\"uuid\":\"nope\",\"roles\":[]}\n"))));
+            assertEquals("malformed player roles on line 2", exception.getMessage());
+        }
+    }
+
+    static String toJson(Map<UUID, List<String>> roles) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<UUID, List<String>> entry : roles.entrySet()) {
+            lines.append("{\"uuid\":\"").append(entry.getKey()).append("\",\"roles\":[");
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                if (i > 0) {
+                    lines.append(',');
+                }
+                lines.append('"').append(entry.getValue().get(i)).append('"');
+            }
+            lines.append("]}\n");
+        }
+        return lines.toString();
+    }
+
+    static Map<UUID, List<String>> export(PlayerRoleDatabase database) throws IOException {
+        StringWriter writer = new StringWriter();
+        int count = database.exportTo(writer);
+
+        Map<UUID, List<String>> roles = new HashMap<>();
+        for (String line : writer.toString().lines().toList()) {
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+            List<String> ids = json.getAsJsonArray("roles").asList().stream().map(JsonElement::getAsString).toList();
+            roles.put(UUID.fromString(json.get("uuid").getAsString()), ids);
+        }
+        assertEquals(count, roles.size());
+        return roles;
+    }
+}
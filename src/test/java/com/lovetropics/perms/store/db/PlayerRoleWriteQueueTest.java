@@ -0,0 +1,107 @@
+package com.lovetropics.perms.store.db;
+
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerRoleWriteQueueTest {
+    private final Map<UUID, ListTag> written = new ConcurrentHashMap<>();
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private PlayerRoleWriteQueue createQueue() {
+        return new PlayerRoleWriteQueue(batch -> {
+            if (this.failing.get()) {
+                throw new IOException("disk full");
+            }
+            this.written.putAll(batch);
+        }, (uuid, roles) -> {
+        });
+    }
+
+    @Test
+    void flushesPendingWrites() throws Exception {
+        PlayerRoleWriteQueue queue = this.createQueue();
+        UUID uuid = UUID.randomUUID();
+        ListTag roles = roles("admin");
+
+        queue.enqueue(uuid, roles);
+        assertSame(roles, queue.getPending(uuid));
+
+        queue.awaitFlush();
+        assertNull(queue.getPending(uuid));
+        assertSame(roles, this.written.get(uuid));
+
+        queue.close();
+    }
+
+    @Test
+    void keepsFailedWritesPending() throws Exception {
+        PlayerRoleWriteQueue queue = this.createQueue();
+        UUID uuid = UUID.randomUUID();
+        ListTag roles = roles("admin");
+
+        this.failing.set(true);
+        queue.enqueue(uuid, roles);
+        assertThrows(IOException.class, queue::awaitFlush);
+        assertSame(roles, queue.getPending(uuid));
+        assertTrue(this.written.isEmpty());
+
+        this.failing.set(false);
+        queue.awaitFlush();
+        assertNull(queue.getPending(uuid));
+        assertSame(roles, this.written.get(uuid));
+
+        queue.close();
+    }
+
+    @Test
+    void closeReportsLostWrites() {
+        PlayerRoleWriteQueue queue = this.createQueue();
+        UUID uuid = UUID.randomUUID();
+
+        this.failing.set(true);
+        queue.enqueue(uuid, roles("admin"));
+
+        IOException exception = assertThrows(IOException.class, queue::close);
+        assertTrue(exception.getMessage().contains(uuid.toString()), exception.getMessage());
+        assertNotNull(queue.getPending(uuid));
+    }
+
+    @Test
+    void newerWriteReplacesPending() throws Exception {
+        PlayerRoleWriteQueue queue = this.createQueue();
+        UUID uuid = UUID.randomUUID();
+        ListTag newRoles = roles("builder");
+
+        this.failing.set(true);
+        queue.enqueue(uuid, roles("admin"));
+        queue.enqueue(uuid, newRoles);
+
+        this.failing.set(false);
+        queue.awaitFlush();
+        assertEquals(newRoles, this.written.get(uuid));
+
+        queue.close();
+    }
+
+    private static ListTag roles(String... ids) {
+        ListTag roles = new ListTag();
+        for (String id : ids) {
+            roles.add(StringTag.valueOf(id));
+        }
+        return roles;
+    }
+}
@@ -0,0 +1,86 @@
+package com.lovetropics.perms.store.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.lovetropics.perms.store.db.PlayerRoleDatabaseTest.toJson;
+import static com.lovetropics.perms.store.db.RoleSetCodecTest.roles;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleMemberIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void tracksMembersAcrossReopen() throws IOException {
+        Path path = this.directory.resolve("roles");
+        Path indexPath = this.directory.resolve("roles.members");
+        UUID admin = UUID.randomUUID();
+        UUID builder = UUID.randomUUID();
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            this.importRoles(database, Map.of(admin, List.of("admin", "builder"), builder, List.of("builder")));
+
+            // the snapshot no longer matches once anything has been written
+            assertFalse(Files.exists(indexPath));
+            assertEquals(Set.of(admin, builder), database.getMembers("builder"));
+        }
+        assertTrue(Files.isRegularFile(indexPath));
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            assertEquals(Set.of(admin), database.getMembers("admin"));
+            assertEquals(Set.of(admin, builder), database.getMembers("builder"));
+            assertEquals(Set.of(), database.getMembers("guest"));
+
+            this.importRoles(database, Map.of(admin, List.of("guest")));
+            assertEquals(Set.of(), database.getMembers("admin"));
+            assertEquals(Set.of(builder), database.getMembers("builder"));
+            assertEquals(Set.of(admin), database.getMembers("guest"));
+        }
+
+        // rebuilt from the database when the snapshot is missing
+        Files.delete(indexPath);
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            assertEquals(Set.of(builder), database.getMembers("builder"));
+            assertEquals(Set.of(admin), database.getMembers("guest"));
+        }
+    }
+
+    @Test
+    void rebuildsWhenDatabaseChangedBehindSnapshot() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID admin = UUID.randomUUID();
+        UUID added = UUID.randomUUID();
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            this.importRoles(database, Map.of(admin, List.of("admin")));
+        }
+
+        // as if the server had stopped before the member index could be updated
+        try (Uuid2BinaryDatabase binary = Uuid2BinaryDatabase.open(path)) {
+            RoleSetCodec codec = RoleSetCodec.load(binary);
+            binary.put(added, codec.encode(roles("admin")));
+            binary.remove(admin);
+        }
+
+        try (PlayerRoleDatabase database = PlayerRoleDatabase.open(path, 1, DatabaseOptions.DEFAULT)) {
+            assertEquals(Set.of(added), database.getMembers("admin"));
+        }
+    }
+
+    private void importRoles(PlayerRoleDatabase database, Map<UUID, List<String>> roles) throws IOException {
+        database.importFrom(new BufferedReader(new StringReader(toJson(roles))));
+    }
+}
@@ -0,0 +1,81 @@
+package com.lovetropics.perms.store.db;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RoleSetCodecTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path path = this.directory.resolve("roles");
+        ListTag first = roles("admin", "builder");
+        ListTag second = roles("builder", "guest", "admin");
+        ListTag empty = roles();
+
+        ByteBuffer firstBytes;
+        ByteBuffer secondBytes;
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            RoleSetCodec codec = RoleSetCodec.load(database);
+            firstBytes = codec.encode(first);
+            secondBytes = codec.encode(second);
+
+            assertEquals(first, codec.decode(firstBytes.duplicate()));
+            assertEquals(second, codec.decode(secondBytes.duplicate()));
+            assertEquals(empty, codec.decode(codec.encode(empty)));
+        }
+
+        // the string table is stored in the database, so records stay readable by a freshly loaded codec
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            RoleSetCodec codec = RoleSetCodec.load(database);
+            assertEquals(first, codec.decode(firstBytes.duplicate()));
+            assertEquals(second, codec.decode(secondBytes.duplicate()));
+        }
+    }
+
+    @Test
+    void decodesLegacyRecords() throws IOException {
+        ListTag roles = roles("admin", "builder");
+        CompoundTag nbt = new CompoundTag();
+        nbt.put("roles", roles);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(nbt, output);
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(this.directory.resolve("roles"))) {
+            RoleSetCodec codec = RoleSetCodec.load(database);
+            assertEquals(roles, codec.decode(ByteBuffer.wrap(output.toByteArray())));
+        }
+    }
+
+    @Test
+    void rejectsUnknownStrings() throws IOException {
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(this.directory.resolve("roles"))) {
+            RoleSetCodec codec = RoleSetCodec.load(database);
+            // version 1, one role, with string id 5
+            assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(new byte[] {1, 1, 5})));
+            assertThrows(IOException.class, () -> codec.decode(ByteBuffer.allocate(0)));
+        }
+    }
+
+    static ListTag roles(String... ids) {
+        ListTag roles = new ListTag();
+        for (String id : ids) {
+            roles.add(StringTag.valueOf(id));
+        }
+        return roles;
+    }
+}
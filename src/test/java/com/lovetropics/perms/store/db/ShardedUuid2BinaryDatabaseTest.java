@@ -0,0 +1,53 @@
+package com.lovetropics.perms.store.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.assertCursor;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.assertValue;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.keys;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.randomKeys;
+import static com.lovetropics.perms.store.db.Uuid2BinaryDatabaseTest.value;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedUuid2BinaryDatabaseTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path path = this.directory.resolve("roles.shards-4");
+        List<UUID> keys = randomKeys(100);
+        UUID removed = keys.get(0);
+
+        try (ShardedUuid2BinaryDatabase database = ShardedUuid2BinaryDatabase.open(path, 4, DatabaseOptions.DEFAULT)) {
+            Map<UUID, ByteBuffer> entries = new HashMap<>();
+            for (UUID key : keys) {
+                entries.put(key, value(key, 1));
+            }
+            database.putAll(entries);
+            assertTrue(database.remove(removed));
+            assertEquals(4, database.files().size());
+        }
+
+        try (ShardedUuid2BinaryDatabase database = ShardedUuid2BinaryDatabase.open(path, 4, DatabaseOptions.DEFAULT)) {
+            for (UUID key : keys.subList(1, keys.size())) {
+                assertValue(database.get(key), key, 1);
+            }
+            assertNull(database.get(removed));
+            assertEquals(new HashSet<>(keys.subList(1, keys.size())), keys(database));
+            assertCursor(database, keys.subList(1, keys.size()), removed);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.lovetropics.perms.store.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Uuid2BinaryDatabaseTest {
+    static final DatabaseOptions MAPPED = new DatabaseOptions(true, DatabaseOptions.SyncMode.ON_CLOSE, 1000);
+
+    static final int VALUE_BYTES = 512;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(first, value(first, 1));
+            database.putAll(Map.of(second, value(second, 1), removed, value(removed, 1)));
+            database.put(first, value(first, 2));
+            assertTrue(database.remove(removed));
+            assertFalse(database.remove(UUID.randomUUID()));
+
+            assertValue(database.get(first), first, 2);
+            assertValue(database.get(second), second, 1);
+            assertNull(database.get(removed));
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            assertValue(database.get(first), first, 2);
+            assertValue(database.get(second), second, 1);
+            assertNull(database.get(removed));
+            assertEquals(Set.of(first, second), keys(database));
+        }
+    }
+
+    @Test
+    void compactsSupersededRecords() throws Exception {
+        Path path = this.directory.resolve("roles");
+        List<UUID> keys = randomKeys(64);
+
+        int rounds = 32;
+        long writtenBytes = 0;
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            for (int round = 0; round < rounds; round++) {
+                for (UUID key : keys) {
+                    database.put(key, value(key, round));
+                    writtenBytes += VALUE_BYTES;
+                }
+            }
+
+            awaitCompaction(path, writtenBytes);
+
+            for (UUID key : keys) {
+                assertValue(database.get(key), key, rounds - 1);
+            }
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            for (UUID key : keys) {
+                assertValue(database.get(key), key, rounds - 1);
+            }
+            assertEquals(new HashSet<>(keys), keys(database));
+        }
+    }
+
+    @Test
+    void mappedRoundTrip() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID key = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path, MAPPED)) {
+            database.put(removed, value(removed, 1));
+            database.put(key, value(key, 1));
+            assertValue(database.get(key), key, 1);
+
+            // a read that reaches past what was mapped so far must remap
+            database.put(key, value(key, 2));
+            assertValue(database.get(key), key, 2);
+            assertTrue(database.remove(removed));
+            assertNull(database.get(removed));
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path, MAPPED)) {
+            assertValue(database.get(key), key, 2);
+            assertNull(database.get(removed));
+        }
+    }
+
+    @Test
+    void mappedReadsDuringCompaction() throws Exception {
+        Path path = this.directory.resolve("roles");
+        List<UUID> keys = randomKeys(64);
+
+        int rounds = 32;
+        long writtenBytes = 0;
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path, MAPPED)) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        while (running.get()) {
+                            for (UUID key : keys) {
+                                ByteBuffer bytes = database.get(key);
+                                if (bytes != null) {
+                                    assertEquals(VALUE_BYTES, bytes.remaining());
+                                    assertEquals(key, readKey(bytes));
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            try {
+                for (int round = 0; round < rounds; round++) {
+                    for (UUID key : keys) {
+                        database.put(key, value(key, round));
+                        writtenBytes += VALUE_BYTES;
+                    }
+                }
+
+                // keep reading until compaction has swapped the file at least once
+                awaitCompaction(path, writtenBytes);
+            } finally {
+                running.set(false);
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+            }
+
+            if (failure.get() != null) {
+                throw new AssertionError("Read failed during compaction", failure.get());
+            }
+
+            for (UUID key : keys) {
+                assertValue(database.get(key), key, rounds - 1);
+            }
+        }
+    }
+
+    @Test
+    void opensFromPointerIndex() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID key = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(key, value(key, 1));
+            database.put(removed, value(removed, 1));
+            database.remove(removed);
+        }
+        assertTrue(Files.isRegularFile(PointerIndexFile.pathFor(path)));
+
+        // once through the snapshot, and once by replaying the log without it
+        for (int i = 0; i < 2; i++) {
+            try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+                assertValue(database.get(key), key, 1);
+                assertNull(database.get(removed));
+                assertEquals(Set.of(key), keys(database));
+            }
+            PointerIndexFile.delete(path);
+        }
+    }
+
+    @Test
+    void ignoresStalePointerIndex() throws IOException {
+        Path path = this.directory.resolve("roles");
+        Path indexPath = PointerIndexFile.pathFor(path);
+        Path savedIndexPath = this.directory.resolve("saved.index");
+        UUID key = UUID.randomUUID();
+        UUID added = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(key, value(key, 1));
+        }
+        Files.copy(indexPath, savedIndexPath);
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(key, value(key, 2));
+            database.put(added, value(added, 1));
+        }
+
+        // as if the snapshot from before the last writes had been left behind
+        Files.copy(savedIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            assertValue(database.get(key), key, 2);
+            assertValue(database.get(added), added, 1);
+        }
+    }
+
+    @Test
+    void recoversFromTornTail() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID kept = UUID.randomUUID();
+        UUID torn = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(kept, value(kept, 1));
+            database.put(torn, value(torn, 1));
+        }
+
+        // as if the last record was only partly written before a crash
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            assertValue(database.get(kept), kept, 1);
+            assertNull(database.get(torn));
+
+            database.put(torn, value(torn, 2));
+        }
+
+        // garbage after the last record must be cut off as well
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20}));
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            assertValue(database.get(kept), kept, 1);
+            assertValue(database.get(torn), torn, 2);
+            assertEquals(Set.of(kept, torn), keys(database));
+        }
+    }
+
+    @Test
+    void dropsRecordsWithBadChecksum() throws IOException {
+        Path path = this.directory.resolve("roles");
+        UUID kept = UUID.randomUUID();
+        UUID corrupted = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            database.put(kept, value(kept, 1));
+            database.put(corrupted, value(corrupted, 1));
+        }
+
+        // flip a byte at the end of the last record's payload, which leaves its header intact
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) ~last.get(0));
+            channel.write(last.flip(), channel.size() - 1);
+        }
+        PointerIndexFile.delete(path);
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            assertValue(database.get(kept), kept, 1);
+            assertNull(database.get(corrupted));
+            assertEquals(Set.of(kept), keys(database));
+        }
+    }
+
+    @Test
+    void cursorVisitsRequestedKeys() throws IOException {
+        Path path = this.directory.resolve("roles");
+        List<UUID> keys = randomKeys(16);
+        UUID missing = UUID.randomUUID();
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path)) {
+            for (UUID key : keys) {
+                database.put(key, value(key, 1));
+            }
+            assertCursor(database, keys, missing);
+        }
+
+        try (Uuid2BinaryDatabase database = Uuid2BinaryDatabase.open(path, MAPPED)) {
+            assertCursor(database, keys, missing);
+        }
+    }
+
+    /**
+     * Checks that a cursor over the given keys and one missing key visits each stored key once, and that the values it
+     * hands out stay intact after it has moved past them.
+     */
+    static void assertCursor(BinaryDatabase database, List<UUID> keys, UUID missing) throws IOException {
+        List<UUID> requested = new ArrayList<>(keys);
+        requested.add(missing);
+
+        Map<UUID, ByteBuffer> visited = new HashMap<>();
+        try (BinaryDatabase.Cursor cursor = database.openCursor(requested)) {
+            while (cursor.next()) {
+                assertNull(visited.put(cursor.key(), cursor.value()), "Visited " + cursor.key() + " twice");
+            }
+        }
+
+        assertEquals(new HashSet<>(keys), visited.keySet());
+        for (Map.Entry<UUID, ByteBuffer> entry : visited.entrySet()) {
+            assertValue(entry.getValue(), entry.getKey(), 1);
+        }
+    }
+
+    /**
+     * Waits for the background compaction to reclaim at least half of what was written to the database.
+     */
+    static void awaitCompaction(Path path, long writtenBytes) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Files.size(path) >= writtenBytes / 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.size(path) < writtenBytes / 2, "Database was never compacted");
+    }
+
+    static List<UUID> randomKeys(int count) {
+        List<UUID> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(UUID.randomUUID());
+        }
+        return keys;
+    }
+
+    static ByteBuffer value(UUID key, int round) {
+        ByteBuffer bytes = ByteBuffer.allocate(VALUE_BYTES);
+        bytes.putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits()).putInt(round);
+        return bytes.clear();
+    }
+
+    static UUID readKey(ByteBuffer bytes) {
+        int start = bytes.position();
+        return new UUID(bytes.getLong(start), bytes.getLong(start + 8));
+    }
+
+    static void assertValue(ByteBuffer bytes, UUID key, int round) {
+        assertNotNull(bytes, "Missing value for " + key);
+        assertEquals(VALUE_BYTES, bytes.remaining());
+        assertEquals(key, readKey(bytes));
+        assertEquals(round, bytes.getInt(bytes.position() + 16));
+    }
+
+    static Set<UUID> keys(BinaryDatabase database) throws IOException {
+        Set<UUID> keys = new HashSet<>();
+        database.forEach((key, bytes) -> assertTrue(keys.add(key), "Visited " + key + " twice"));
+        return keys;
+    }
+}
@@ -0,0 +1,49 @@
+package com.lovetropics.perms.store.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UuidPointerTableTest {
+    @Test
+    void matchesHashMap() {
+        Random random = new Random(1234);
+
+        // keys with the same xor of their halves hash to the same slot, which exercises probing and backward shifts
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            long salt = random.nextLong();
+            keys.add(new UUID(salt, salt ^ (i % 16)));
+        }
+
+        UuidPointerTable table = new UuidPointerTable();
+        Map<UUID, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            UUID key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                Long previous = expected.remove(key);
+                assertEquals(previous != null ? previous : UuidPointerTable.NULL_POINTER, table.remove(key));
+            } else {
+                long pointer = random.nextLong() & Long.MAX_VALUE;
+                Long previous = expected.put(key, pointer);
+                assertEquals(previous != null ? previous : UuidPointerTable.NULL_POINTER, table.put(key, pointer));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        for (UUID key : keys) {
+            assertEquals(expected.getOrDefault(key, UuidPointerTable.NULL_POINTER), table.get(key));
+        }
+
+        Map<UUID, Long> visited = new HashMap<>();
+        table.forEach((mostSignificant, leastSignificant, pointer) -> visited.put(new UUID(mostSignificant, leastSignificant), pointer));
+        assertEquals(expected, visited);
+    }
+}